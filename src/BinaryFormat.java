@@ -0,0 +1,87 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Shared primitives of the compact task file format used by both TaskManagers.
+ *
+ * File: int magic, byte version, then the manager's records. A task record is
+ * two longs of UUID, one flag byte (bits 0-1 priority ordinal, then completed /
+ * has-due / has-title / has-description / has-category), the due date as an
+ * epoch-day int, created time as UTC epoch millis, and the present strings as
+ * int length + UTF-8 bytes. A due date whose epoch day does not fit an int is
+ * refused when writing rather than stored wrapped.
+ */
+final class BinaryFormat {
+    static final int MAGIC = 0x54444F42; // "TDOB"
+    static final int VERSION = 1;
+
+    static final int PRIORITY_MASK = 0x03;
+    static final int F_COMPLETED = 0x04;
+    static final int F_DUE = 0x08;
+    static final int F_TITLE = 0x10;
+    static final int F_DESCRIPTION = 0x20;
+    static final int F_CATEGORY = 0x40;
+
+    private BinaryFormat() {}
+
+    static void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    static int readHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Invalid data");
+        int version = in.readUnsignedByte();
+        if (version > VERSION) throw new IOException("Unsupported file version " + version);
+        return version;
+    }
+
+    /** True if the stream holds a legacy {@code ObjectOutputStream} file; the stream is not consumed. */
+    static boolean isJavaSerialized(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int b0 = in.read(), b1 = in.read();
+        in.reset();
+        return b0 == 0xAC && b1 == 0xED;
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeUuid(DataOutput out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    static UUID readUuid(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    /** The epoch day of {@code d} as stored in a record; throws rather than wrap if it does not fit an int. */
+    static int toEpochDay(LocalDate d) throws IOException {
+        try {
+            return Math.toIntExact(d.toEpochDay());
+        } catch (ArithmeticException ex) {
+            throw new IOException("Due date out of range: " + d);
+        }
+    }
+
+    static long toEpochMilli(LocalDateTime t) { return t.toInstant(ZoneOffset.UTC).toEpochMilli(); }
+
+    static LocalDateTime fromEpochMilli(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.*;
+
+/**
+ * One shared {@link Category} instance per name. Tasks hold the interned instance, so indexes
+ * key on identity, and {@link #rename} renames it in place: its tasks and index entries stay
+ * as they are. Lookups by name are exact; {@link #matching} ignores case like filterByCategory.
+ */
+public class CategoryRegistry {
+    private final Map<String, Category> byName = new LinkedHashMap<>();
+
+    public Category get(String name) { return byName.get(name); }
+
+    public Category intern(String name) {
+        Category c = byName.get(name == null ? "General" : name);
+        return c != null ? c : register(new Category(name));
+    }
+
+    /**
+     * The registered instance with c's name, registering a copy of c if there is none: c may be
+     * held elsewhere (another manager's task, say), and only this registry's own instances are
+     * renamed.
+     */
+    public Category intern(Category c) {
+        Category existing = byName.get(c.getName());
+        return existing != null ? existing : register(new Category(c.getName()));
+    }
+
+    /** Registered categories whose name equals {@code name} ignoring case; none for a null name. */
+    public List<Category> matching(String name) {
+        List<Category> out = new ArrayList<>(1);
+        if (name == null) return out;
+        for (Category c : byName.values()) if (c.getName().equalsIgnoreCase(name)) out.add(c);
+        return out;
+    }
+
+    /**
+     * Gives c the name newName (null meaning "General"). If another category already has that
+     * name, c is dropped instead and that category is returned: the caller then moves c's tasks
+     * over to it. Otherwise returns c, renamed in place.
+     */
+    public Category rename(Category c, String newName) {
+        String name = newName == null ? "General" : newName;
+        Category target = byName.get(name);
+        if (target == c) return c;
+        byName.remove(c.getName());
+        if (target != null) return target;
+        c.rename(name);
+        return register(c);
+    }
+
+    /** The registered instances, in registration order. */
+    public Collection<Category> all() { return Collections.unmodifiableCollection(byName.values()); }
+
+    private Category register(Category c) {
+        byName.put(c.getName(), c);
+        return c;
+    }
+}
@@ -0,0 +1,328 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints, roaring style: values are grouped by their high 16 bits
+ * into chunks, and each chunk is a sorted char array while it holds at most 4096 values, or a
+ * 1024-word bitmap once denser. Sparse sets cost about 2 bytes per value, dense ones 1 bit, and
+ * {@link #and}/{@link #or}/{@link #andNot} work chunk by chunk without decoding values.
+ *
+ * The combinators return new bitmaps and never modify their operands.
+ */
+public class CompressedBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+
+    private static final class Chunk {
+        char[] values; // array mode: sorted, first card entries used
+        long[] words;  // bitmap mode
+        int card;
+
+        static Chunk ofArray(char[] values, int card) {
+            if (card == 0) return null;
+            Chunk c = new Chunk();
+            c.values = values;
+            c.card = card;
+            return c;
+        }
+
+        // normalizes to array mode when sparse enough
+        static Chunk ofWords(long[] words) {
+            int card = 0;
+            for (long w : words) card += Long.bitCount(w);
+            if (card == 0) return null;
+            Chunk c = new Chunk();
+            c.words = words;
+            c.card = card;
+            if (card <= ARRAY_MAX) c.toArrayMode();
+            return c;
+        }
+
+        boolean contains(char low) {
+            if (words != null) return (words[low >>> 6] & (1L << low)) != 0;
+            return Arrays.binarySearch(values, 0, card, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) != 0) return false;
+                words[low >>> 6] |= bit;
+                card++;
+                return true;
+            }
+            int i = Arrays.binarySearch(values, 0, card, low);
+            if (i >= 0) return false;
+            if (card == ARRAY_MAX) {
+                toBitmapMode();
+                return add(low);
+            }
+            i = -i - 1;
+            if (card == values.length) values = Arrays.copyOf(values, Math.min(ARRAY_MAX, card * 2));
+            System.arraycopy(values, i, values, i + 1, card - i);
+            values[i] = low;
+            card++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) == 0) return false;
+                words[low >>> 6] &= ~bit;
+                // convert back well below the limit so add/remove at the boundary doesn't flip modes
+                if (--card <= ARRAY_MAX / 2) toArrayMode();
+                return true;
+            }
+            int i = Arrays.binarySearch(values, 0, card, low);
+            if (i < 0) return false;
+            System.arraycopy(values, i + 1, values, i, card - i - 1);
+            card--;
+            return true;
+        }
+
+        void toBitmapMode() {
+            words = new long[WORDS];
+            for (int i = 0; i < card; i++) words[values[i] >>> 6] |= 1L << values[i];
+            values = null;
+        }
+
+        void toArrayMode() {
+            char[] out = new char[Math.max(card, 1)];
+            int k = 0;
+            for (int w = 0; w < WORDS; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    out[k++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+            values = out;
+            words = null;
+        }
+
+        long[] wordsCopy() {
+            if (words != null) return words.clone();
+            long[] out = new long[WORDS];
+            for (int i = 0; i < card; i++) out[values[i] >>> 6] |= 1L << values[i];
+            return out;
+        }
+
+        Chunk copy() {
+            Chunk c = new Chunk();
+            c.values = values != null ? Arrays.copyOf(values, card) : null;
+            c.words = words != null ? words.clone() : null;
+            c.card = card;
+            return c;
+        }
+
+        void forEach(int base, IntConsumer action) {
+            if (words == null) {
+                for (int i = 0; i < card; i++) action.accept(base | values[i]);
+                return;
+            }
+            for (int w = 0; w < WORDS; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    action.accept(base | w << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+
+        static Chunk and(Chunk a, Chunk b) {
+            if (a.words != null && b.words != null) {
+                long[] out = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) out[w] = a.words[w] & b.words[w];
+                return ofWords(out);
+            }
+            if (a.words != null || (b.words == null && b.card < a.card)) { Chunk t = a; a = b; b = t; }
+            // a is the smaller array: probe b for each value
+            char[] out = new char[a.card];
+            int k = 0;
+            for (int i = 0; i < a.card; i++) if (b.contains(a.values[i])) out[k++] = a.values[i];
+            return ofArray(out, k);
+        }
+
+        static Chunk or(Chunk a, Chunk b) {
+            if (a.words == null && b.words == null && a.card + b.card <= ARRAY_MAX) {
+                char[] out = new char[a.card + b.card];
+                int i = 0, j = 0, k = 0;
+                while (i < a.card && j < b.card) {
+                    char x = a.values[i], y = b.values[j];
+                    if (x <= y) i++;
+                    if (y <= x) j++;
+                    out[k++] = x <= y ? x : y;
+                }
+                while (i < a.card) out[k++] = a.values[i++];
+                while (j < b.card) out[k++] = b.values[j++];
+                return ofArray(out, k);
+            }
+            long[] out = a.wordsCopy();
+            if (b.words != null) for (int w = 0; w < WORDS; w++) out[w] |= b.words[w];
+            else for (int i = 0; i < b.card; i++) out[b.values[i] >>> 6] |= 1L << b.values[i];
+            return ofWords(out);
+        }
+
+        // union into this chunk; in bitmap mode card is left stale until recount().
+        // Switches to bitmap mode early: re-merging a growing array per operand is quadratic.
+        void orInPlace(Chunk b) {
+            if (words == null) {
+                if (b.words == null && card + b.card <= ARRAY_MAX / 4) {
+                    Chunk m = or(this, b);
+                    values = m.values;
+                    card = m.card;
+                    return;
+                }
+                toBitmapMode();
+            }
+            if (b.words != null) for (int w = 0; w < WORDS; w++) words[w] |= b.words[w];
+            else for (int i = 0; i < b.card; i++) words[b.values[i] >>> 6] |= 1L << b.values[i];
+        }
+
+        void recount() {
+            if (words == null) return;
+            card = 0;
+            for (long w : words) card += Long.bitCount(w);
+            if (card <= ARRAY_MAX) toArrayMode();
+        }
+
+        static Chunk andNot(Chunk a, Chunk b) {
+            if (a.words == null) {
+                char[] out = new char[a.card];
+                int k = 0;
+                for (int i = 0; i < a.card; i++) if (!b.contains(a.values[i])) out[k++] = a.values[i];
+                return ofArray(out, k);
+            }
+            long[] out = a.words.clone();
+            if (b.words != null) for (int w = 0; w < WORDS; w++) out[w] &= ~b.words[w];
+            else for (int i = 0; i < b.card; i++) out[b.values[i] >>> 6] &= ~(1L << b.values[i]);
+            return ofWords(out);
+        }
+    }
+
+    private char[] keys = new char[4];      // high 16 bits of each chunk, ascending
+    private Chunk[] chunks = new Chunk[4];
+    private int n;
+
+    public CompressedBitmap() {}
+
+    /** Union of all the given bitmaps, accumulated in place so long lists (e.g. one per due day) stay linear. */
+    public static CompressedBitmap orAll(Iterable<CompressedBitmap> bitmaps) {
+        CompressedBitmap r = new CompressedBitmap();
+        for (CompressedBitmap b : bitmaps) {
+            for (int j = 0; j < b.n; j++) {
+                int i = r.find(b.keys[j]);
+                if (i < 0) r.insert(-i - 1, b.keys[j], b.chunks[j].copy());
+                else r.chunks[i].orInPlace(b.chunks[j]);
+            }
+        }
+        for (int i = 0; i < r.n; i++) r.chunks[i].recount();
+        return r;
+    }
+
+    boolean add(int x) {
+        checkValue(x);
+        char key = (char) (x >>> 16);
+        int i = find(key);
+        if (i < 0) {
+            Chunk c = new Chunk();
+            c.values = new char[4];
+            insert(i = -i - 1, key, c);
+        }
+        return chunks[i].add((char) x);
+    }
+
+    boolean remove(int x) {
+        if (x < 0) return false;
+        int i = find((char) (x >>> 16));
+        if (i < 0 || !chunks[i].remove((char) x)) return false;
+        if (chunks[i].card == 0) {
+            System.arraycopy(keys, i + 1, keys, i, n - i - 1);
+            System.arraycopy(chunks, i + 1, chunks, i, n - i - 1);
+            chunks[--n] = null;
+        }
+        return true;
+    }
+
+    public boolean contains(int x) {
+        if (x < 0) return false;
+        int i = find((char) (x >>> 16));
+        return i >= 0 && chunks[i].contains((char) x);
+    }
+
+    public int cardinality() {
+        int card = 0;
+        for (int i = 0; i < n; i++) card += chunks[i].card;
+        return card;
+    }
+
+    public boolean isEmpty() { return n == 0; }
+
+    /** Calls action with every value, in ascending order. */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < n; i++) chunks[i].forEach(keys[i] << 16, action);
+    }
+
+    public int[] toArray() {
+        int[] out = new int[cardinality()];
+        int[] k = { 0 };
+        forEach(v -> out[k[0]++] = v);
+        return out;
+    }
+
+    public CompressedBitmap and(CompressedBitmap o) {
+        CompressedBitmap r = new CompressedBitmap();
+        for (int i = 0, j = 0; i < n && j < o.n; ) {
+            if (keys[i] < o.keys[j]) i++;
+            else if (keys[i] > o.keys[j]) j++;
+            else {
+                Chunk c = Chunk.and(chunks[i], o.chunks[j]);
+                if (c != null) r.insert(r.n, keys[i], c);
+                i++;
+                j++;
+            }
+        }
+        return r;
+    }
+
+    public CompressedBitmap or(CompressedBitmap o) {
+        CompressedBitmap r = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < n || j < o.n) {
+            if (j == o.n || (i < n && keys[i] < o.keys[j])) { r.insert(r.n, keys[i], chunks[i].copy()); i++; }
+            else if (i == n || keys[i] > o.keys[j]) { r.insert(r.n, o.keys[j], o.chunks[j].copy()); j++; }
+            else {
+                r.insert(r.n, keys[i], Chunk.or(chunks[i], o.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return r;
+    }
+
+    /** Values in this bitmap but not in o. */
+    public CompressedBitmap andNot(CompressedBitmap o) {
+        CompressedBitmap r = new CompressedBitmap();
+        for (int i = 0, j = 0; i < n; i++) {
+            while (j < o.n && o.keys[j] < keys[i]) j++;
+            Chunk c = j < o.n && o.keys[j] == keys[i] ? Chunk.andNot(chunks[i], o.chunks[j]) : chunks[i].copy();
+            if (c != null) r.insert(r.n, keys[i], c);
+        }
+        return r;
+    }
+
+    private int find(char key) { return Arrays.binarySearch(keys, 0, n, key); }
+
+    private void insert(int i, char key, Chunk c) {
+        if (n == keys.length) {
+            keys = Arrays.copyOf(keys, n * 2);
+            chunks = Arrays.copyOf(chunks, n * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, n - i);
+        System.arraycopy(chunks, i, chunks, i + 1, n - i);
+        keys[i] = key;
+        chunks[i] = c;
+        n++;
+    }
+
+    private static void checkValue(int x) {
+        if (x < 0) throw new IllegalArgumentException("Negative value " + x);
+    }
+}
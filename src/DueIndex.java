@@ -0,0 +1,53 @@
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Navigable index from due date (as epoch-day) to the keys of the items due that day.
+ * Range queries only visit the days in range; items without a due date are not indexed.
+ */
+public class DueIndex<K> {
+    private final TreeMap<Long, Set<K>> byDay = new TreeMap<>();
+    private final Map<K, Long> dayOf = new HashMap<>();
+
+    /** Files key under due, moving it if it was filed under another day; a null due removes it. */
+    public void put(K key, LocalDate due) {
+        Long day = due != null ? due.toEpochDay() : null;
+        Long old = dayOf.get(key);
+        if (Objects.equals(old, day)) return;
+        remove(key);
+        if (day == null) return;
+        byDay.computeIfAbsent(day, d -> new HashSet<>()).add(key);
+        dayOf.put(key, day);
+    }
+
+    public void remove(K key) {
+        Long day = dayOf.remove(key);
+        if (day == null) return;
+        Set<K> keys = byDay.get(day);
+        keys.remove(key);
+        if (keys.isEmpty()) byDay.remove(day);
+    }
+
+    /** Keys due on any day from {@code from} to {@code to}, both inclusive, in date order. */
+    public List<K> between(LocalDate from, LocalDate to) {
+        List<K> out = new ArrayList<>();
+        if (from.isAfter(to)) return out;
+        for (Set<K> keys : byDay.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) out.addAll(keys);
+        return out;
+    }
+
+    /** The keys due on each day from {@code from} to {@code to} (a null bound is open), one set per day in date order. */
+    public Collection<Set<K>> days(LocalDate from, LocalDate to) {
+        long lo = from != null ? from.toEpochDay() : Long.MIN_VALUE;
+        long hi = to != null ? to.toEpochDay() : Long.MAX_VALUE;
+        if (lo > hi) return Collections.emptyList();
+        return byDay.subMap(lo, true, hi, true).values();
+    }
+
+    /** Keys due strictly before {@code day}. */
+    public List<K> before(LocalDate day) {
+        List<K> out = new ArrayList<>();
+        for (Set<K> keys : byDay.headMap(day.toEpochDay(), false).values()) out.addAll(keys);
+        return out;
+    }
+}
@@ -0,0 +1,254 @@
+import java.util.*;
+
+/**
+ * Immutable hash array mapped trie. {@link #plus} and {@link #minus} return a new map that shares
+ * every untouched node with this one, copying only the O(log32 n) nodes on the key's path, so
+ * older versions stay valid and cost nothing to keep. Keys must not be null.
+ */
+public final class PersistentHashMap<K, V> {
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private interface Node {
+        Object find(int shift, int hash, Object key);
+        Node plus(int shift, int hash, Object key, Object value, boolean[] added);
+        /** This node without key: the same node if absent, null if nothing is left. */
+        Node minus(int shift, int hash, Object key);
+    }
+
+    // up to 32 slots selected by 5 hash bits; each slot holds (key, value) or (null, child node)
+    private static final class BitmapNode implements Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[i];
+            if (k == null) return ((Node) array[i + 1]).find(shift + 5, hash, key);
+            return key.equals(k) ? array[i + 1] : null;
+        }
+
+        @Override
+        public Node plus(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] a = new Object[array.length + 2];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = key;
+                a[i + 1] = value;
+                System.arraycopy(array, i, a, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, a);
+            }
+            Object k = array[i], v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).plus(shift + 5, hash, key, value, added);
+                return child == v ? this : with(i + 1, child);
+            }
+            if (key.equals(k)) return v == value ? this : with(i + 1, value);
+            added[0] = true;
+            Object[] a = array.clone();
+            a[i] = null;
+            a[i + 1] = pair(shift + 5, k, v, hash, key, value);
+            return new BitmapNode(bitmap, a);
+        }
+
+        @Override
+        public Node minus(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[i];
+            if (k == null) {
+                Node child = ((Node) array[i + 1]).minus(shift + 5, hash, key);
+                if (child == array[i + 1]) return this;
+                if (child != null) return with(i + 1, child);
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) return null;
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return new BitmapNode(bitmap ^ bit, a);
+        }
+
+        private BitmapNode with(int i, Object o) {
+            Object[] a = array.clone();
+            a[i] = o;
+            return new BitmapNode(bitmap, a);
+        }
+    }
+
+    // keys whose full 32-bit hashes are equal
+    private static final class CollisionNode implements Node {
+        final int hash;
+        final Object[] array; // key, value, key, value...
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i >= 0 ? array[i + 1] : null;
+        }
+
+        @Override
+        public Node plus(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // push this node one level down next to the new key
+                return new BitmapNode(bit(this.hash, shift), new Object[] { null, this }).plus(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) return this;
+                Object[] a = array.clone();
+                a[i + 1] = value;
+                return new CollisionNode(hash, a);
+            }
+            Object[] a = Arrays.copyOf(array, array.length + 2);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, a);
+        }
+
+        @Override
+        public Node minus(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            if (i < 0) return this;
+            if (array.length == 2) return null;
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, array.length - i - 2);
+            return new CollisionNode(hash, a);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) if (key.equals(array[i])) return i;
+            return -1;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() { return (PersistentHashMap<K, V>) EMPTY; }
+
+    /**
+     * Map of the given distinct keys to the values at the same positions, built bottom-up with one
+     * allocation per node instead of a path copy per key; for loading large maps in one go.
+     */
+    public static <K, V> PersistentHashMap<K, V> of(List<? extends K> keys, List<? extends V> values) {
+        int n = keys.size();
+        if (n == 0) return empty();
+        int[] hashes = new int[n];
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = hash(keys.get(i));
+            // sort by the hash read in trie order (lowest 5 bits first), so every node's
+            // entries end up contiguous and in slot order; the low half keeps the position
+            order[i] = ((long) trieOrder(hashes[i]) << 32 | i) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(order);
+        // gather into trie order once, so building walks arrays sequentially
+        int[] h = new int[n];
+        Object[] kvs = new Object[2 * n];
+        for (int i = 0; i < n; i++) {
+            int at = (int) order[i];
+            h[i] = hashes[at];
+            kvs[2 * i] = keys.get(at);
+            kvs[2 * i + 1] = values.get(at);
+        }
+        return new PersistentHashMap<>(build(h, kvs, 0, n, 0), n);
+    }
+
+    public int size() { return size; }
+
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        return root == null ? null : (V) root.find(0, hash(key), key);
+    }
+
+    public boolean containsKey(K key) { return get(key) != null; }
+
+    /** This map with key mapped to value (not null). */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(value);
+        boolean[] added = new boolean[1];
+        Node r = (root != null ? root : BitmapNode.EMPTY).plus(0, hash(key), key, value, added);
+        return r == root ? this : new PersistentHashMap<>(r, added[0] ? size + 1 : size);
+    }
+
+    /** This map without key. */
+    public PersistentHashMap<K, V> minus(K key) {
+        if (root == null) return this;
+        Node r = root.minus(0, hash(key), key);
+        return r == root ? this : new PersistentHashMap<>(r, size - 1);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) { return 1 << ((hash >>> shift) & 31); }
+
+    private static int trieOrder(int hash) {
+        int t = 0;
+        for (int shift = 0; shift < 32; shift += 5) {
+            int bits = Math.min(5, 32 - shift);
+            t = t << bits | (hash >>> shift) & ((1 << bits) - 1);
+        }
+        return t;
+    }
+
+    // node for entries [from, to) in trie order, all of which agree on the hash bits below shift
+    private static Node build(int[] hashes, Object[] kvs, int from, int to, int shift) {
+        Object[] array = new Object[64];
+        int bitmap = 0, slot = 0;
+        for (int i = from; i < to; ) {
+            int chunk = (hashes[i] >>> shift) & 31;
+            int j = i + 1;
+            while (j < to && ((hashes[j] >>> shift) & 31) == chunk) j++;
+            bitmap |= 1 << chunk;
+            if (j - i == 1) {
+                array[2 * slot] = kvs[2 * i];
+                array[2 * slot + 1] = kvs[2 * i + 1];
+            } else if (hashes[i] == hashes[j - 1]) {
+                array[2 * slot + 1] = new CollisionNode(hashes[i], Arrays.copyOfRange(kvs, 2 * i, 2 * j));
+            } else {
+                array[2 * slot + 1] = build(hashes, kvs, i, j, shift + 5);
+            }
+            slot++;
+            i = j;
+        }
+        return new BitmapNode(bitmap, Arrays.copyOf(array, 2 * slot));
+    }
+
+    // node holding two entries whose hashes first differ at or below shift
+    private static Node pair(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+        int h1 = hash(k1);
+        if (h1 == h2) return new CollisionNode(h1, new Object[] { k1, v1, k2, v2 });
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY.plus(shift, h1, k1, v1, added).plus(shift, h2, k2, v2, added);
+    }
+}
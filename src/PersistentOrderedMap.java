@@ -0,0 +1,171 @@
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Immutable map that iterates in insertion order, like an immutable LinkedHashMap: a
+ * {@link PersistentHashMap} from key to slot plus a {@link PersistentVector} of entries by slot.
+ * Every update returns a new version in O(log n) and shares all untouched structure, so a
+ * version can be handed to another thread (a save, a search, the UI) as a free snapshot.
+ *
+ * Removal leaves an empty slot; once empty slots outnumber entries the vector is rebuilt,
+ * keeping iteration O(size) at an amortized O(1) cost per removal. Values must not be null.
+ */
+public final class PersistentOrderedMap<K, V> implements Iterable<V> {
+    private static final int MIN_COMPACT = 32;
+    private static final PersistentOrderedMap<?, ?> EMPTY =
+        new PersistentOrderedMap<>(PersistentHashMap.empty(), PersistentVector.empty());
+
+    private final PersistentHashMap<K, Integer> slots;
+    private final PersistentVector<Map.Entry<K, V>> entries; // null where removed
+
+    private PersistentOrderedMap(PersistentHashMap<K, Integer> slots, PersistentVector<Map.Entry<K, V>> entries) {
+        this.slots = slots;
+        this.entries = entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentOrderedMap<K, V> empty() { return (PersistentOrderedMap<K, V>) EMPTY; }
+
+    public int size() { return slots.size(); }
+
+    public boolean isEmpty() { return slots.size() == 0; }
+
+    public V get(K key) {
+        Integer slot = slots.get(key);
+        return slot != null ? entries.get(slot).getValue() : null;
+    }
+
+    public boolean containsKey(K key) { return slots.containsKey(key); }
+
+    /** This map with key mapped to value; a new key goes last, an existing one keeps its position. */
+    public PersistentOrderedMap<K, V> plus(K key, V value) {
+        Map.Entry<K, V> e = new AbstractMap.SimpleImmutableEntry<>(key, Objects.requireNonNull(value));
+        Integer slot = slots.get(key);
+        if (slot != null) return new PersistentOrderedMap<>(slots, entries.set(slot, e));
+        return new PersistentOrderedMap<>(slots.plus(key, entries.size()), entries.append(e));
+    }
+
+    public PersistentOrderedMap<K, V> minus(K key) {
+        Integer slot = slots.get(key);
+        if (slot == null) return this;
+        PersistentOrderedMap<K, V> m = new PersistentOrderedMap<>(slots.minus(key), entries.set(slot, null));
+        return m.entries.size() - m.size() > Math.max(MIN_COMPACT, m.size()) ? m.compacted() : m;
+    }
+
+    private PersistentOrderedMap<K, V> compacted() {
+        List<Map.Entry<K, V>> live = new ArrayList<>(size());
+        PersistentHashMap<K, Integer> s = PersistentHashMap.empty();
+        for (int i = 0; i < entries.size(); i++) {
+            Map.Entry<K, V> e = entries.get(i);
+            if (e == null) continue;
+            s = s.plus(e.getKey(), live.size());
+            live.add(e);
+        }
+        return new PersistentOrderedMap<>(s, PersistentVector.of(live));
+    }
+
+    /**
+     * Collects entries and builds the map once, much cheaper than repeated {@link #plus} when
+     * loading. A repeated key keeps its first position and takes the last value, as with plus.
+     */
+    public static final class Builder<K, V> {
+        private final List<K> keys = new ArrayList<>();
+        private final List<Map.Entry<K, V>> entries = new ArrayList<>();
+        private final Map<K, Integer> positions = new HashMap<>();
+
+        public Builder<K, V> put(K key, V value) {
+            Map.Entry<K, V> e = new AbstractMap.SimpleImmutableEntry<>(key, Objects.requireNonNull(value));
+            Integer at = positions.putIfAbsent(key, entries.size());
+            if (at != null) {
+                entries.set(at, e);
+                return this;
+            }
+            keys.add(key);
+            entries.add(e);
+            return this;
+        }
+
+        public PersistentOrderedMap<K, V> build() {
+            List<Integer> slots = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) slots.add(i);
+            return new PersistentOrderedMap<>(PersistentHashMap.of(keys, slots), PersistentVector.of(entries));
+        }
+    }
+
+    /** Values in insertion order. SIZED, ORDERED and IMMUTABLE; splits are SUBSIZED while no slot is empty. */
+    @Override
+    public Spliterator<V> spliterator() {
+        return new ValueSpliterator<>(entries, 0, entries.size(), size(), entries.size() == size());
+    }
+
+    @Override
+    public Iterator<V> iterator() { return Spliterators.iterator(spliterator()); }
+
+    @Override
+    public void forEach(Consumer<? super V> action) { spliterator().forEachRemaining(action); }
+
+    private static final class ValueSpliterator<K, V> implements Spliterator<V> {
+        private final PersistentVector<Map.Entry<K, V>> entries;
+        private final boolean dense;
+        private int index;
+        private final int end;
+        private long exact; // -1 once splitting made the count unknown
+
+        ValueSpliterator(PersistentVector<Map.Entry<K, V>> entries, int index, int end, long exact, boolean dense) {
+            this.entries = entries;
+            this.index = index;
+            this.end = end;
+            this.exact = exact;
+            this.dense = dense;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            while (index < end) {
+                Map.Entry<K, V> e = entries.get(index++);
+                if (e != null) {
+                    if (exact > 0) exact--;
+                    action.accept(e.getValue());
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super V> action) {
+            // a leaf array at a time instead of a trie walk per element
+            while (index < end) {
+                Object[] leaf = entries.leaf(index);
+                int stop = Math.min(end, (index | 31) + 1);
+                for (; index < stop; index++) {
+                    Map.Entry<K, V> e = (Map.Entry<K, V>) leaf[index & 31];
+                    if (e != null) action.accept(e.getValue());
+                }
+            }
+            if (exact > 0) exact = 0;
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            int mid = ((index + end) >>> 1) & ~31;
+            if (mid <= index) return null;
+            Spliterator<V> prefix = new ValueSpliterator<>(entries, index, mid, dense ? mid - index : -1, dense);
+            index = mid;
+            exact = dense ? end - index : -1;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() { return exact >= 0 ? exact : end - index; }
+
+        @Override
+        public int characteristics() {
+            int c = ORDERED | IMMUTABLE | NONNULL;
+            if (exact >= 0) c |= SIZED;
+            if (dense) c |= SUBSIZED;
+            return c;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.*;
+
+/**
+ * Immutable indexed sequence stored as a 32-way trie. {@link #append} and {@link #set} copy only
+ * the O(log32 n) arrays on the element's path; every other array is shared with the previous
+ * version. Elements may be null.
+ */
+public final class PersistentVector<E> {
+    private static final int BITS = 5, WIDTH = 1 << BITS, MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(new Object[WIDTH], 0, 0);
+
+    private final Object[] root;
+    private final int shift; // BITS * (height - 1)
+    private final int size;
+
+    private PersistentVector(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() { return (PersistentVector<E>) EMPTY; }
+
+    /** A vector holding the given elements, built bottom-up in O(n) without intermediate versions. */
+    public static <E> PersistentVector<E> of(List<? extends E> elements) {
+        int n = elements.size();
+        if (n == 0) return empty();
+        Object[] level = new Object[(n + MASK) >>> BITS];
+        for (int i = 0; i < level.length; i++) {
+            Object[] leaf = new Object[WIDTH];
+            for (int j = 0; j < WIDTH && i * WIDTH + j < n; j++) leaf[j] = elements.get(i * WIDTH + j);
+            level[i] = leaf;
+        }
+        int shift = 0;
+        while (level.length > 1) {
+            Object[] up = new Object[(level.length + MASK) >>> BITS];
+            for (int i = 0; i < up.length; i++) {
+                up[i] = Arrays.copyOfRange(level, i * WIDTH, (i + 1) * WIDTH);
+            }
+            level = up;
+            shift += BITS;
+        }
+        return new PersistentVector<>((Object[]) level[0], shift, n);
+    }
+
+    public int size() { return size; }
+
+    @SuppressWarnings("unchecked")
+    public E get(int i) {
+        Objects.checkIndex(i, size);
+        return (E) leaf(i)[i & MASK];
+    }
+
+    /** This vector with element i replaced. */
+    public PersistentVector<E> set(int i, E e) {
+        Objects.checkIndex(i, size);
+        return new PersistentVector<>(put(shift, root, i, e), shift, size);
+    }
+
+    /** This vector with e added at the end. */
+    public PersistentVector<E> append(E e) {
+        if (size == WIDTH << shift) {
+            // root is full: grow a level
+            Object[] up = new Object[WIDTH];
+            up[0] = root;
+            return new PersistentVector<>(put(shift + BITS, up, size, e), shift + BITS, size + 1);
+        }
+        return new PersistentVector<>(put(shift, root, size, e), shift, size + 1);
+    }
+
+    // the leaf array holding index i; callers read i & MASK
+    Object[] leaf(int i) {
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) node = (Object[]) node[(i >>> level) & MASK];
+        return node;
+    }
+
+    private static Object[] put(int level, Object[] node, int i, Object e) {
+        Object[] copy = node != null ? node.clone() : new Object[WIDTH];
+        if (level == 0) copy[i & MASK] = e;
+        else {
+            int sub = (i >>> level) & MASK;
+            copy[sub] = put(level - BITS, (Object[]) copy[sub], i, e);
+        }
+        return copy;
+    }
+}
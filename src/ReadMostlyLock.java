@@ -0,0 +1,24 @@
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * A {@link StampedLock} for read-mostly structures. {@link #read} runs a body under the shared
+ * read lock: readers proceed together and wait only while a writer holds the lock. The indexes
+ * guarded this way are ordinary mutable collections, so they are never walked without the lock;
+ * optimistic stamps ({@code tryOptimisticRead}/{@code validate}) are only used to detect that a
+ * write happened, e.g. by query cursors, never to read a structure unlocked.
+ * Not reentrant: a body must not call back into anything that locks this lock again.
+ */
+public class ReadMostlyLock extends StampedLock {
+    private static final long serialVersionUID = 1L;
+
+    /** The result of body, run holding the read lock. */
+    public <T> T read(Supplier<T> body) {
+        long stamp = readLock();
+        try {
+            return body.get();
+        } finally {
+            unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer. Each slot carries a sequence
+ * number saying whose turn it is: a producer claims the next position with one CAS, fills the
+ * slot and publishes it by advancing the slot's sequence; the consumer takes it and hands the
+ * slot to the producer one lap later. Nobody ever blocks, and offer() fails instead of waiting
+ * when the buffer is full.
+ */
+public final class RingBuffer<E> {
+    private final Object[] items;
+    // slot i is free for position p when sequences[i] == p, and full with position p when it's p + 1
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // next position producers claim
+    private long head; // next position the consumer takes; consumer thread only
+
+    /**
+     * capacity is rounded up to a power of two, and to at least 2: with a single slot, "full with
+     * position p" and "free for position p + 1" would be the same sequence number.
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) throw new IllegalArgumentException("capacity " + capacity);
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        items = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        mask = size - 1;
+    }
+
+    public int capacity() { return items.length; }
+
+    /** Adds e unless the buffer is full. Any thread. */
+    public boolean offer(E e) {
+        long pos = tail.get();
+        for (;;) {
+            int i = (int) pos & mask;
+            long lag = sequences.getAcquire(i) - pos;
+            if (lag == 0) {
+                if (tail.weakCompareAndSetVolatile(pos, pos + 1)) {
+                    items[i] = e;
+                    sequences.setRelease(i, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (lag < 0) {
+                return false; // the consumer hasn't freed this slot from the previous lap yet
+            } else {
+                pos = tail.get(); // another producer took pos
+            }
+        }
+    }
+
+    /** Whether nothing is ready to take. Consumer thread only. */
+    public boolean isEmpty() {
+        return sequences.getAcquire((int) head & mask) != head + 1;
+    }
+
+    /** Takes up to max elements in order, passing each to sink, and returns how many. Consumer thread only. */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> sink, int max) {
+        int n = 0;
+        while (n < max) {
+            int i = (int) head & mask;
+            if (sequences.getAcquire(i) != head + 1) break;
+            E e = (E) items[i];
+            items[i] = null;
+            sequences.setRelease(i, head + items.length);
+            head++;
+            n++;
+            sink.accept(e);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of search results, keyed on the lower-cased query and valid for one generation
+ * of the data: the owner bumps its generation on every write, an entry only answers lookups of
+ * the generation it was computed at, and the first store under a newer generation drops the
+ * rest. {@link #refine} serves a query that extends a cached one ("inv" -> "invo"), whose result
+ * is a subset of the cached result. Holds at most {@code maxEntries} results and
+ * {@code maxItems} items across them, evicting the least recently used entry.
+ *
+ * Thread-safe. Lookups take no lock, so concurrent searches never wait on each other here; only
+ * stores (made after a miss, once a full search has run) synchronize among themselves. Recency
+ * is recorded without synchronization, so eviction order is approximate.
+ */
+public class SearchCache<V> {
+    private static final class Entry<V> {
+        final long generation;
+        final List<V> result;
+        volatile long lastUsed = System.nanoTime();
+
+        Entry(long generation, List<V> result) {
+            this.generation = generation;
+            this.result = result;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxItems;
+    private final ConcurrentHashMap<String, Entry<V>> results = new ConcurrentHashMap<>();
+    // guarded by this; lookups don't need them, they compare each entry's own generation
+    private long generation;
+    private long items;
+
+    public SearchCache(int maxEntries, long maxItems) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries " + maxEntries);
+        this.maxEntries = maxEntries;
+        this.maxItems = maxItems;
+    }
+
+    /** The cached result for exactly query, or null. */
+    public List<V> get(String query, long gen) {
+        return hit(results.get(query), gen);
+    }
+
+    /**
+     * The cached result of the longest proper prefix of query, or null; every result of query
+     * is in it, in the same order.
+     */
+    public List<V> refine(String query, long gen) {
+        for (int n = query.length() - 1; n > 0; n--) {
+            List<V> r = hit(results.get(query.substring(0, n)), gen);
+            if (r != null) return r;
+        }
+        return null;
+    }
+
+    private static <V> List<V> hit(Entry<V> e, long gen) {
+        if (e == null || e.generation != gen) return null;
+        e.lastUsed = System.nanoTime();
+        return e.result;
+    }
+
+    /** Caches result for query as computed at gen; ignored if the data has moved on since. */
+    public void put(String query, long gen, List<V> result) {
+        if (result.size() > maxItems) return;
+        Entry<V> e = new Entry<>(gen, Collections.unmodifiableList(new ArrayList<>(result)));
+        synchronized (this) {
+            if (gen < generation) return;
+            if (gen > generation) {
+                results.clear();
+                items = 0;
+                generation = gen;
+            }
+            Entry<V> old = results.put(query, e);
+            if (old != null) items -= old.result.size();
+            items += e.result.size();
+            while (results.size() > maxEntries || items > maxItems) evictLeastRecent(query);
+        }
+    }
+
+    // at most maxEntries + 1 entries, so a scan for the oldest is cheap; never evicts keep
+    private void evictLeastRecent(String keep) {
+        String victim = null;
+        long oldest = Long.MAX_VALUE;
+        for (Map.Entry<String, Entry<V>> me : results.entrySet()) {
+            if (me.getKey().equals(keep)) continue;
+            long used = me.getValue().lastUsed;
+            if (victim == null || used - oldest < 0) {
+                victim = me.getKey();
+                oldest = used;
+            }
+        }
+        items -= results.remove(victim).result.size();
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.*;
+
+/**
+ * Gives every task a dense ordinal and keeps one {@link CompressedBitmap} of ordinals per
+ * priority, per (interned) category, per completed state and per due day. Multi-facet filters
+ * are answered by combining bitmaps and only then looking tasks up by ordinal.
+ *
+ * Ordinals of removed tasks are reused, so the bitmaps stay as dense as the task count.
+ * The bitmaps returned here are the live index; callers combine them and never modify them.
+ */
+public class TaskBitmapIndex {
+
+    // the facet values a task is currently filed under, so re-filing only touches what changed
+    private static final class Filed {
+        Priority priority;
+        Category category;
+        boolean completed;
+        Long dueDay;
+    }
+
+    private Task[] tasks = new Task[16];
+    private Filed[] filed = new Filed[16];
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final Deque<Integer> free = new ArrayDeque<>();
+    private int next;
+
+    private final CompressedBitmap all = new CompressedBitmap();
+    private final EnumMap<Priority, CompressedBitmap> byPriority = new EnumMap<>(Priority.class);
+    private final IdentityHashMap<Category, CompressedBitmap> byCategory = new IdentityHashMap<>();
+    private final CompressedBitmap completed = new CompressedBitmap();
+    private final CompressedBitmap open = new CompressedBitmap();
+    private final TreeMap<Long, CompressedBitmap> byDueDay = new TreeMap<>();
+
+    public TaskBitmapIndex() {
+        for (Priority p : Priority.values()) byPriority.put(p, new CompressedBitmap());
+    }
+
+    /** Files (or re-files) t under its current priority, category, completed state and due date. */
+    public void put(Task t) {
+        Integer ord = ordinals.get(t.getId());
+        if (ord == null) {
+            ord = free.isEmpty() ? next++ : free.pop();
+            if (ord == tasks.length) {
+                tasks = Arrays.copyOf(tasks, ord * 2);
+                filed = Arrays.copyOf(filed, ord * 2);
+            }
+            ordinals.put(t.getId(), ord);
+            filed[ord] = new Filed();
+            all.add(ord);
+        }
+        int o = ord;
+        tasks[o] = t;
+        Filed f = filed[o];
+        if (f.priority != t.getPriority()) {
+            if (f.priority != null) byPriority.get(f.priority).remove(o);
+            byPriority.get(t.getPriority()).add(o);
+            f.priority = t.getPriority();
+        }
+        if (f.category != t.getCategory()) {
+            if (f.category != null) unfile(byCategory, f.category, o);
+            if (t.getCategory() != null) byCategory.computeIfAbsent(t.getCategory(), c -> new CompressedBitmap()).add(o);
+            f.category = t.getCategory();
+        }
+        (t.isCompleted() ? open : completed).remove(o);
+        (t.isCompleted() ? completed : open).add(o);
+        f.completed = t.isCompleted();
+        Long day = t.getDueDate() != null ? t.getDueDate().toEpochDay() : null;
+        if (!Objects.equals(f.dueDay, day)) {
+            if (f.dueDay != null) unfile(byDueDay, f.dueDay, o);
+            if (day != null) byDueDay.computeIfAbsent(day, d -> new CompressedBitmap()).add(o);
+            f.dueDay = day;
+        }
+    }
+
+    public void remove(UUID id) {
+        Integer ord = ordinals.remove(id);
+        if (ord == null) return;
+        int o = ord;
+        Filed f = filed[o];
+        all.remove(o);
+        byPriority.get(f.priority).remove(o);
+        if (f.category != null) unfile(byCategory, f.category, o);
+        (f.completed ? completed : open).remove(o);
+        if (f.dueDay != null) unfile(byDueDay, f.dueDay, o);
+        tasks[o] = null;
+        filed[o] = null;
+        free.push(o);
+    }
+
+    /** The task holding ordinal, or null if none does (e.g. a bitmap taken before a clear). */
+    public Task task(int ordinal) { return ordinal >= 0 && ordinal < tasks.length ? tasks[ordinal] : null; }
+
+    public CompressedBitmap all() { return all; }
+
+    public CompressedBitmap priority(Priority p) { return byPriority.get(p); }
+
+    /** Tasks filed under exactly this Category instance; empty if there are none. */
+    public CompressedBitmap category(Category c) {
+        CompressedBitmap bits = byCategory.get(c);
+        return bits != null ? bits : new CompressedBitmap();
+    }
+
+    public CompressedBitmap completed(boolean done) { return done ? completed : open; }
+
+    /** One bitmap per due day from fromDay to toDay (epoch-days, inclusive); OR them for the range. */
+    public Collection<CompressedBitmap> dueDays(long fromDay, long toDay) {
+        if (fromDay > toDay) return Collections.emptyList();
+        return byDueDay.subMap(fromDay, true, toDay, true).values();
+    }
+
+    private static <F> void unfile(Map<F, CompressedBitmap> buckets, F facet, int ordinal) {
+        CompressedBitmap bits = buckets.get(facet);
+        bits.remove(ordinal);
+        if (bits.isEmpty()) buckets.remove(facet);
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Lazy result of {@link TaskManager#query}. Nothing is evaluated until the first
+ * {@link #hasNext}; ordered scans then produce one match at a time and stop at the limit.
+ * Like a collection iterator, a cursor is only valid until the manager is next modified.
+ */
+public class TaskCursor implements Iterator<Task>, Iterable<Task> {
+    private final String plan;
+    private Supplier<Iterator<Task>> source;
+    private Iterator<Task> it;
+
+    TaskCursor(String plan, Supplier<Iterator<Task>> source) {
+        this.plan = plan;
+        this.source = source;
+    }
+
+    /** Short description of the plan the query planner chose, e.g. "scan priority HIGH". */
+    public String plan() { return plan; }
+
+    @Override
+    public boolean hasNext() {
+        if (it == null) {
+            it = source.get();
+            source = null;
+        }
+        return it.hasNext();
+    }
+
+    @Override
+    public Task next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return it.next();
+    }
+
+    @Override
+    public Iterator<Task> iterator() { return this; }
+
+    /** Drains the remaining results into a list. */
+    public List<Task> toList() {
+        List<Task> out = new ArrayList<>();
+        while (hasNext()) out.add(it.next());
+        return out;
+    }
+}
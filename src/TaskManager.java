@@ -1,77 +1,998 @@
 import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class TaskManager implements Serializable {
+/**
+ * Tasks with indexes for ordering, filters, due dates and search.
+ *
+ * Thread safety: a manager may be shared between threads. Mutations take a {@link ReadMostlyLock}
+ * exclusively. Lookups, filters, due queries and search walk mutable indexes, so they hold the
+ * shared read lock: readers don't block each other, but do wait while a write is in progress.
+ * getTasks(), stream() and the other traversals copy or walk an immutable snapshot of the order
+ * taken after the last change, without locking. Returned lists belong to the caller, but the Task
+ * objects in them are the stored ones: while other threads may be reading, change a task only
+ * through this class (updateTask, setPriority, toggleCompleted, renameCategory, or updateAll for
+ * many at once), not by calling its setters directly. A {@link TaskCursor} from query() throws
+ * ConcurrentModificationException once the manager has been modified after the query was
+ * planned. Where several threads mutate under load, submit through a {@link TaskWriter} instead,
+ * which applies changes in batches from a single thread.
+ */
+public class TaskManager implements Serializable, Iterable<Task> {
     private static final long serialVersionUID = 1L;
-    private List<Task> tasks = new ArrayList<>();
-    private Set<Category> categories = new HashSet<>();
+    static final int SEARCH_CACHE_ENTRIES = 64;
+    static final int SEARCH_CACHE_TASKS = 1 << 20;
+    // serialized form is unchanged: "List<Task> tasks" plus "Set<Category> categories"
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("tasks", List.class),
+        new ObjectStreamField("categories", Set.class)
+    };
+
+    // id -> task, iterated in insertion order
+    private transient LinkedHashMap<UUID, Task> tasks = new LinkedHashMap<>();
+    // one shared Category instance per name
+    private transient CategoryRegistry categories = new CategoryRegistry();
+    // words of title/description, narrows search() before the contains check (category names
+    // are matched through byCategory instead, see textCandidates)
+    private transient TextIndex<UUID> textIndex;
+    // 3-char windows of the same fields, narrows substring queries of length >= 3
+    private transient TrigramIndex<UUID> trigrams;
+    // all tasks in Task.compareTo order, plus the key each task is currently filed under
+    private transient TreeMap<SortKey, Task> ordered;
+    private transient Map<UUID, SortKey> sortKeys;
+    // the same order split per priority, so priority filters only walk their own bucket
+    private transient EnumMap<Priority, TreeMap<SortKey, Task>> byPriority;
+    // and per (interned) category; keyed by identity so renaming a category moves nothing
+    private transient IdentityHashMap<Category, TreeMap<SortKey, Task>> byCategory;
+    // due date -> ids, for range queries (overdue, due today, due this week)
+    private transient DueIndex<UUID> dueIndex;
+    // compressed bitmaps of task ordinals per facet, combined by the filter API below
+    private transient TaskBitmapIndex facets;
+    private transient long nextSeq;
+    // optional write-through backend (see open(TaskStore)) and each task's record slot in it
+    private transient TaskStore store;
+    private transient Map<UUID, Integer> storeSlots;
+    // set by open(TaskStore) until the store's records have been decoded (see ensureLoaded)
+    private transient volatile boolean unloaded;
+    // the tasks in order as of the last change to membership or order; built on first read
+    // after a change and never modified, so any number of traversals share it
+    private transient volatile Task[] view;
+    // writers lock exclusively, readers share the read lock (see the class comment)
+    private transient ReadMostlyLock lock = new ReadMostlyLock();
+    // the thread running inBatch, which already holds the write lock
+    private transient Thread batchWriter;
+    // bumped by every write; search results are cached per generation
+    private transient long generation;
+    private transient SearchCache<Task> searchCache = newSearchCache();
+
+    /**
+     * Position of a task in {@link Task#compareTo} order, frozen at the last add/update so the
+     * task can still be found in {@code ordered} after its fields were changed in place.
+     * Ties fall back to insertion sequence, matching the old stable sort.
+     */
+    private static final class SortKey implements Comparable<SortKey> {
+        final Task task;
+        final Priority priority;
+        final Category category;
+        final long key;
+        final long tiebreak;
+        final long seq;
+
+        SortKey(Task t, long seq) {
+            this.task = t;
+            this.priority = t.getPriority();
+            this.category = t.getCategory();
+            this.key = t.getSortKey();
+            this.tiebreak = t.getSortTiebreak();
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(SortKey o) {
+            if (key != o.key) return Long.compare(key, o.key);
+            if (tiebreak != o.tiebreak) return Long.compare(tiebreak, o.tiebreak);
+            return Long.compare(seq, o.seq);
+        }
+    }
 
     public TaskManager() {
-        categories.add(new Category("General"));
+        initIndexes();
+        categories.intern("General");
+    }
+
+    private void initIndexes() {
+        textIndex = new TextIndex<>();
+        trigrams = new TrigramIndex<>();
+        ordered = new TreeMap<>();
+        sortKeys = new HashMap<>();
+        byPriority = new EnumMap<>(Priority.class);
+        for (Priority p : Priority.values()) byPriority.put(p, new TreeMap<>());
+        byCategory = new IdentityHashMap<>();
+        dueIndex = new DueIndex<>();
+        facets = new TaskBitmapIndex();
+    }
+
+    /**
+     * Opens a manager over a mapped {@link TaskStore}; every later mutation is written through.
+     * Opening decodes nothing: the first call that needs the tasks (any read or write) decodes
+     * the live records straight from the mapping, with no stream deserialization, and files them
+     * in the indexes. That first call pays O(n); later ones don't.
+     */
+    public static TaskManager open(TaskStore store) {
+        TaskManager m = new TaskManager();
+        m.storeSlots = new HashMap<>();
+        m.store = store;
+        m.unloaded = true;
+        return m;
     }
 
     public void addTask(Task t) {
-        tasks.add(t);
-        if (t.getCategory() != null) categories.add(t.getCategory());
+        long stamp = writeLock();
+        try {
+            internCategory(t);
+            Task old = tasks.put(t.getId(), t);
+            index(t);
+            if (store != null) {
+                try {
+                    if (old != null) store.write(storeSlots.get(t.getId()), t);
+                    else storeSlots.put(t.getId(), store.append(t));
+                } catch (IOException ex) { throw new UncheckedIOException(ex); }
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
     }
 
     public void updateTask(Task t) {
-        // tasks stored by reference; ensure category set contains it
-        if (t.getCategory() != null) categories.add(t.getCategory());
+        long stamp = writeLock();
+        try {
+            // tasks stored by reference; ensure the category is registered (and shared)
+            internCategory(t);
+            if (tasks.containsKey(t.getId())) {
+                tasks.put(t.getId(), t);
+                index(t);
+                if (store != null) {
+                    try { store.write(storeSlots.get(t.getId()), t); }
+                    catch (IOException ex) { throw new UncheckedIOException(ex); }
+                }
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Renames a category. The shared instance is renamed in place, so its tasks keep it and no
+     * index changes; only if another category already has newName (null meaning "General") are
+     * the tasks moved over to that one. With a TaskStore attached, records hold the name and
+     * are rewritten.
+     */
+    public void renameCategory(String oldName, String newName) {
+        long stamp = writeLock();
+        try {
+            Category c = categories.get(oldName);
+            if (c == null) return;
+            TreeMap<SortKey, Task> bucket = byCategory.get(c);
+            List<Task> affected = bucket != null ? new ArrayList<>(bucket.values()) : Collections.emptyList();
+            Category target = categories.rename(c, newName);
+            if (target == c && c.getName().equals(oldName)) return; // renamed to its own name
+            if (target != c) {
+                for (Task t : affected) {
+                    t.setCategory(target);
+                    indexOrder(t);
+                }
+            }
+            if (store != null) {
+                try { for (Task t : affected) store.write(storeSlots.get(t.getId()), t); }
+                catch (IOException ex) { throw new UncheckedIOException(ex); }
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /** Changes the task's priority and moves it between priority buckets; with a store attached this rewrites a single byte. */
+    public void setPriority(UUID id, Priority p) {
+        long stamp = writeLock();
+        try {
+            Task t = tasks.get(id);
+            if (t == null || t.getPriority() == p) return;
+            t.setPriority(p);
+            indexOrder(t);
+            if (store != null) store.setPriority(storeSlots.get(id), p);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /** Flips the task's completed flag; with a store attached this rewrites a single byte. */
+    public void toggleCompleted(UUID id) {
+        long stamp = writeLock();
+        try {
+            Task t = tasks.get(id);
+            if (t == null) return;
+            t.toggleCompleted();
+            facets.put(t);
+            if (store != null) store.setCompleted(storeSlots.get(id), t.isCompleted());
+        } finally {
+            unlockWrite(stamp);
+        }
     }
 
     public void removeTask(UUID id) {
-        tasks.removeIf(t -> t.getId().equals(id));
+        long stamp = writeLock();
+        try {
+            tasks.remove(id);
+            unindex(id);
+            if (store != null) {
+                Integer slot = storeSlots.remove(id);
+                if (slot != null) store.delete(slot);
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    // ---- bulk writes: one lock for the whole call, and an attached store is forced once ----
+
+    /** Adds (or replaces) every task; readers see all of them at once. */
+    public void addAll(Collection<Task> ts) {
+        bulk(() -> { for (Task t : ts) addTask(t); });
+    }
+
+    /**
+     * Applies edit to a copy of each stored task in ids and stores the copy in its place; unknown
+     * ids are skipped. edit runs under the write lock and must not call back into this manager.
+     * Returns the stored copies. If edit throws, the exception propagates: the tasks before the
+     * failing one stay updated, and that one and the rest are left exactly as they were.
+     */
+    public List<Task> updateAll(Collection<UUID> ids, Consumer<Task> edit) {
+        List<Task> out = new ArrayList<>(ids.size());
+        bulk(() -> {
+            for (UUID id : ids) {
+                Task cur = tasks.get(id);
+                if (cur == null) continue;
+                // edit a copy so a throwing edit can't leave the stored task out of step with its index entries
+                Task t = cur.copy();
+                edit.accept(t);
+                updateTask(t);
+                out.add(t);
+            }
+        });
+        return out;
+    }
+
+    /** Marks the tasks in ids completed; returns the ones that changed. */
+    public List<Task> completeAll(Collection<UUID> ids) {
+        List<Task> out = new ArrayList<>();
+        bulk(() -> {
+            for (UUID id : ids) {
+                Task t = tasks.get(id);
+                if (t == null || t.isCompleted()) continue;
+                toggleCompleted(id);
+                out.add(t);
+            }
+        });
+        return out;
+    }
+
+    /** Removes every task matching filter, found in one pass over the tasks, and returns them. */
+    public List<Task> removeAll(Predicate<Task> filter) {
+        List<Task> removed = new ArrayList<>();
+        bulk(() -> {
+            for (Task t : tasks.values()) if (filter.test(t)) removed.add(t);
+            for (Task t : removed) removeTask(t.getId());
+        });
+        return removed;
+    }
+
+    private void bulk(Runnable body) {
+        inBatch(() -> {
+            body.run();
+            if (store != null) store.force();
+        });
     }
 
     public List<Task> getTasks() {
-        List<Task> copy = new ArrayList<>(tasks);
-        Collections.sort(copy);
-        return copy;
+        return new ArrayList<>(Arrays.asList(view()));
+    }
+
+    // ---- traversal without copying: these all share one immutable snapshot per change ----
+
+    /**
+     * SIZED, ORDERED (Task.compareTo order) and IMMUTABLE: the spliterator covers the tasks as they
+     * were when it was created, whatever the manager does meanwhile. Task objects themselves are
+     * shared, not copied, so field edits made through updateTask etc. are visible.
+     */
+    @Override
+    public Spliterator<Task> spliterator() {
+        return Spliterators.spliterator(view(), Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL);
+    }
+
+    @Override
+    public Iterator<Task> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    public void forEach(Consumer<? super Task> action) {
+        for (Task t : view()) action.accept(t);
+    }
+
+    public Stream<Task> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<Task> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    private Task[] view() {
+        Task[] v = view;
+        if (v != null) return v;
+        // writers clear the field under the write lock, so holding the read lock the rebuilt
+        // array can't be overtaken by a change before it is published
+        long stamp = readLock();
+        try {
+            v = view;
+            if (v == null) view = v = ordered.values().toArray(new Task[0]);
+            return v;
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
     public Task findById(UUID id) {
-        for (Task t : tasks) if (t.getId().equals(id)) return t;
-        return null;
+        return read(() -> tasks.get(id));
     }
 
     public List<Task> filterByCategory(String name) {
-        return tasks.stream()
-            .filter(t -> t.getCategory() != null && t.getCategory().getName().equalsIgnoreCase(name))
-            .sorted()
-            .collect(Collectors.toList());
+        return read(() -> {
+            List<Category> matching = categories.matching(name);
+            if (matching.size() == 1) {
+                TreeMap<SortKey, Task> bucket = byCategory.get(matching.get(0));
+                return bucket != null ? new ArrayList<>(bucket.values()) : new ArrayList<>();
+            }
+            // names differing only in case: merge their buckets back into one order
+            TreeMap<SortKey, Task> merged = new TreeMap<>();
+            for (Category c : matching) merged.putAll(byCategory.getOrDefault(c, new TreeMap<>()));
+            return new ArrayList<>(merged.values());
+        });
     }
 
     public List<Task> filterByPriority(Priority p) {
-        return tasks.stream().filter(t -> t.getPriority() == p).sorted().collect(Collectors.toList());
+        return read(() -> new ArrayList<>(byPriority.get(p).values()));
+    }
+
+    /** Tasks of priority p with the given completed state, e.g. HIGH and not yet done; other priorities are not visited. */
+    public List<Task> filterByPriority(Priority p, boolean completed) {
+        return read(() -> {
+            List<Task> out = new ArrayList<>();
+            for (Task t : byPriority.get(p).values()) if (t.isCompleted() == completed) out.add(t);
+            return out;
+        });
+    }
+
+    /** Tasks due between from and to (both inclusive), in Task.compareTo order; only days in range are visited. */
+    public List<Task> dueBetween(LocalDate from, LocalDate to) {
+        return read(() -> inOrder(dueIndex.between(from, to)));
+    }
+
+    /** Incomplete tasks due before asOf, in Task.compareTo order. */
+    public List<Task> overdue(LocalDate asOf) {
+        return read(() -> {
+            List<Task> out = inOrder(dueIndex.before(asOf));
+            out.removeIf(Task::isCompleted);
+            return out;
+        });
+    }
+
+    /** Tasks due from today through {@code days} days from now; dueWithin(0) is "due today". */
+    public List<Task> dueWithin(int days) {
+        LocalDate today = LocalDate.now();
+        return dueBetween(today, today.plusDays(days));
+    }
+
+    private List<Task> inOrder(List<UUID> ids) {
+        ids.sort(Comparator.comparing(sortKeys::get));
+        List<Task> out = new ArrayList<>(ids.size());
+        for (UUID id : ids) out.add(tasks.get(id));
+        return out;
+    }
+
+    // ---- multi-facet filters: combine bitmaps with and/or/andNot, then materialize once ----
+    // e.g. select(priorityBits(HIGH).and(categoryBits("Work")).and(completedBits(false)).and(dueBits(null, today)))
+
+    /** Every task. */
+    public CompressedBitmap allBits() {
+        return read(() -> CompressedBitmap.orAll(Collections.singletonList(facets.all())));
+    }
+
+    /** Tasks with any of the given priorities. */
+    public CompressedBitmap priorityBits(Priority... priorities) {
+        return read(() -> anyPriority(Arrays.asList(priorities)));
+    }
+
+    /** Tasks in any of the named categories, ignoring case like {@link #filterByCategory}. */
+    public CompressedBitmap categoryBits(String... names) {
+        return read(() -> {
+            List<CompressedBitmap> bits = new ArrayList<>();
+            for (String name : names) for (Category c : categories.matching(name)) bits.add(facets.category(c));
+            return CompressedBitmap.orAll(bits);
+        });
+    }
+
+    public CompressedBitmap completedBits(boolean completed) {
+        return read(() -> CompressedBitmap.orAll(Collections.singletonList(facets.completed(completed))));
+    }
+
+    /** Tasks due between from and to, both inclusive; a null bound is open. Tasks without a due date never match. */
+    public CompressedBitmap dueBits(LocalDate from, LocalDate to) {
+        return read(() -> dueRange(from, to));
+    }
+
+    // unlocked helpers shared with query(), which already holds the read lock
+    private CompressedBitmap anyPriority(Collection<Priority> priorities) {
+        List<CompressedBitmap> bits = new ArrayList<>();
+        for (Priority p : priorities) bits.add(facets.priority(p));
+        return CompressedBitmap.orAll(bits);
+    }
+
+    private CompressedBitmap dueRange(LocalDate from, LocalDate to) {
+        return CompressedBitmap.orAll(facets.dueDays(from != null ? from.toEpochDay() : Long.MIN_VALUE,
+            to != null ? to.toEpochDay() : Long.MAX_VALUE));
+    }
+
+    /**
+     * The tasks in bits, in Task.compareTo order. Bitmaps describe the tasks when they were taken:
+     * tasks removed since (also by clearAllTasks) are skipped, but with other threads writing,
+     * bits taken in separate calls may disagree, and a removed task's ordinal may already belong
+     * to a new task.
+     */
+    public List<Task> select(CompressedBitmap bits) {
+        return read(() -> {
+            SortKey[] keys = new SortKey[bits.cardinality()];
+            int[] k = { 0 };
+            bits.forEach(ord -> {
+                Task t = facets.task(ord);
+                if (t != null) keys[k[0]++] = sortKeys.get(t.getId());
+            });
+            Arrays.sort(keys, 0, k[0]);
+            List<Task> out = new ArrayList<>(k[0]);
+            for (int i = 0; i < k[0]; i++) out.add(keys[i].task);
+            return out;
+        });
+    }
+
+    // ---- query planner ----
+
+    /**
+     * Runs q and returns a lazy cursor over the results. The planner estimates how many tasks
+     * each access path would visit and picks the cheapest:
+     * - scan: walk an already ordered bucket (all tasks, one priority or one category) and stop
+     *   after offset+limit matches; DEFAULT order only, wins when matches are plentiful.
+     * - due scan: the same for DUE_DATE order, walking the due index day by day.
+     * - bitmap: AND the facet bitmaps, smallest first, and check the rest on each hit.
+     * - text: the trigram/word candidates for q's text, when fewer than the bitmap hits.
+     * Candidate plans keep the best offset+limit results in a bounded heap instead of sorting
+     * every match. Planning holds the read lock; the cursor takes it again for each step.
+     */
+    public TaskCursor query(TaskQuery q) {
+        long stamp = readLock();
+        try {
+            // any later write invalidates this stamp and with it the cursor
+            return plan(q, lock.tryOptimisticRead());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private TaskCursor plan(TaskQuery q, long planned) {
+        String lower = q.getText() != null ? q.getText().toLowerCase() : null;
+        Set<Category> cats = null;
+        if (!q.getCategories().isEmpty()) {
+            cats = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (String name : q.getCategories()) cats.addAll(categories.matching(name));
+        }
+        Set<Category> allowed = cats;
+        Predicate<Task> filter = t -> matches(t, q, lower, allowed);
+
+        List<CompressedBitmap> bits = new ArrayList<>();
+        if (q.getPriorities().size() == 1) bits.add(facets.priority(q.getPriorities().iterator().next()));
+        else if (!q.getPriorities().isEmpty()) bits.add(anyPriority(q.getPriorities()));
+        if (cats != null && cats.size() == 1) bits.add(facets.category(cats.iterator().next()));
+        else if (cats != null) {
+            List<CompressedBitmap> each = new ArrayList<>();
+            for (Category c : cats) each.add(facets.category(c));
+            bits.add(CompressedBitmap.orAll(each));
+        }
+        if (q.getCompleted() != null) bits.add(facets.completed(q.getCompleted()));
+        if (q.hasDueFilter()) bits.add(dueRange(q.getDueFrom(), q.getDueTo()));
+        bits.sort(Comparator.comparingInt(CompressedBitmap::cardinality));
+        CompressedBitmap hits = null;
+        for (CompressedBitmap b : bits) {
+            hits = hits == null ? b : hits.and(b);
+            if (hits.isEmpty()) break;
+        }
+        List<UUID> textHits = lower != null ? textCandidates(lower) : null;
+
+        int bitCount = hits != null ? hits.cardinality() : Integer.MAX_VALUE;
+        int textCount = textHits != null ? textHits.size() : Integer.MAX_VALUE;
+        int estimate = Math.min(tasks.size(), Math.min(bitCount, textCount));
+
+        long need = (long) q.getOffset() + q.getLimit();
+        if (q.getOrder() == TaskQuery.Order.DUE_DATE && scanCost(need, tasks.size(), estimate) <= estimate) {
+            return new TaskCursor("scan by due date", guarded(planned,
+                () -> scan(byDueDate(q).iterator(), filter, q.getOffset(), q.getLimit())));
+        }
+        if (q.getOrder() == TaskQuery.Order.DEFAULT) {
+            NavigableMap<SortKey, Task> bucket = ordered;
+            String name = "all";
+            if (q.getPriorities().size() == 1) {
+                Priority p = q.getPriorities().iterator().next();
+                bucket = byPriority.get(p);
+                name = "priority " + p;
+            }
+            if (cats != null && cats.size() == 1) {
+                Category c = cats.iterator().next();
+                TreeMap<SortKey, Task> catBucket = byCategory.getOrDefault(c, new TreeMap<>());
+                if (catBucket.size() < bucket.size()) {
+                    bucket = catBucket;
+                    name = "category " + c.getName();
+                }
+            }
+            if (scanCost(need, bucket.size(), estimate) <= estimate) {
+                NavigableMap<SortKey, Task> b = bucket;
+                return new TaskCursor("scan " + name, guarded(planned,
+                    () -> scan(b.values().iterator(), filter, q.getOffset(), q.getLimit())));
+            }
+        }
+
+        Consumer<Consumer<SortKey>> source;
+        String plan;
+        if (textHits != null && textCount <= bitCount) {
+            plan = "text index, " + textCount + " candidates";
+            source = sink -> { for (UUID id : textHits) sink.accept(sortKeys.get(id)); };
+        } else if (hits != null) {
+            CompressedBitmap h = hits;
+            plan = "bitmap, " + bitCount + " candidates";
+            source = sink -> h.forEach(ord -> sink.accept(sortKeys.get(facets.task(ord).getId())));
+        } else {
+            plan = "all tasks";
+            source = sink -> ordered.keySet().forEach(sink);
+        }
+        Comparator<SortKey> cmp = comparator(q.getOrder());
+        return new TaskCursor(plan + ", " + q.getOrder(), guarded(planned,
+            () -> topK(source, filter, cmp, q.getOffset(), q.getLimit())));
+    }
+
+    // a cursor source whose every step runs under the read lock and fails fast after a write
+    private Supplier<Iterator<Task>> guarded(long planned, Supplier<Iterator<Task>> source) {
+        return () -> {
+            Iterator<Task> it = step(planned, source);
+            return new Iterator<Task>() {
+                @Override
+                public boolean hasNext() { return step(planned, it::hasNext); }
+
+                @Override
+                public Task next() { return step(planned, it::next); }
+            };
+        };
+    }
+
+    private <T> T step(long planned, Supplier<T> body) {
+        long stamp = lock.readLock();
+        try {
+            if (!lock.validate(planned)) throw new ConcurrentModificationException("tasks changed since the query was planned");
+            return body.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // an ordered scan visits about need * |bucket| / matches tasks before it can stop
+    private static double scanCost(long need, int bucketSize, int estimate) {
+        return estimate == 0 ? bucketSize : Math.min(bucketSize, (double) need * bucketSize / estimate);
+    }
+
+    // tasks in DUE_DATE order, lazily a day at a time; undated tasks last unless q filters on due
+    private Stream<Task> byDueDate(TaskQuery q) {
+        Stream<Task> dated = dueIndex.days(q.getDueFrom(), q.getDueTo()).stream()
+            .flatMap(ids -> ids.stream().map(sortKeys::get).sorted().map(k -> k.task));
+        if (q.hasDueFilter()) return dated;
+        return Stream.concat(dated, ordered.values().stream().filter(t -> t.getDueDate() == null));
+    }
+
+    private static boolean matches(Task t, TaskQuery q, String lower, Set<Category> cats) {
+        if (!q.getPriorities().isEmpty() && !q.getPriorities().contains(t.getPriority())) return false;
+        if (cats != null && !cats.contains(t.getCategory())) return false;
+        if (q.getCompleted() != null && t.isCompleted() != q.getCompleted()) return false;
+        if (q.hasDueFilter()) {
+            LocalDate d = t.getDueDate();
+            if (d == null || (q.getDueFrom() != null && d.isBefore(q.getDueFrom()))
+                || (q.getDueTo() != null && d.isAfter(q.getDueTo()))) return false;
+        }
+        return lower == null || matches(t, lower);
+    }
+
+    private static Comparator<SortKey> comparator(TaskQuery.Order order) {
+        switch (order) {
+            case DUE_DATE:
+                return Comparator.comparing((SortKey k) -> k.task.getDueDate(), Comparator.nullsLast(Comparator.naturalOrder()))
+                    .thenComparing(Comparator.naturalOrder());
+            case NEWEST:
+                return Comparator.comparing((SortKey k) -> k.task.getCreatedAt(), Comparator.reverseOrder())
+                    .thenComparing(Comparator.naturalOrder());
+            case TITLE:
+                return Comparator.comparing((SortKey k) -> k.task.getTitle(), Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+                    .thenComparing(Comparator.naturalOrder());
+            default:
+                return Comparator.naturalOrder();
+        }
+    }
+
+    // matches of an already ordered sequence, produced one at a time
+    private static Iterator<Task> scan(Iterator<Task> it, Predicate<Task> filter, int offset, int limit) {
+        return new Iterator<Task>() {
+            int skip = offset, left = limit;
+            Task pending;
+
+            @Override
+            public boolean hasNext() {
+                while (pending == null && left > 0 && it.hasNext()) {
+                    Task t = it.next();
+                    if (!filter.test(t)) continue;
+                    if (skip > 0) skip--;
+                    else pending = t;
+                }
+                return pending != null;
+            }
+
+            @Override
+            public Task next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Task t = pending;
+                pending = null;
+                left--;
+                return t;
+            }
+        };
+    }
+
+    // the first offset+limit matches in cmp order, keeping only that many at a time
+    private static Iterator<Task> topK(Consumer<Consumer<SortKey>> source, Predicate<Task> filter,
+                                       Comparator<SortKey> cmp, int offset, int limit) {
+        long need = (long) offset + limit;
+        List<SortKey> kept;
+        if (limit == 0) {
+            kept = Collections.emptyList();
+        } else if (need >= Integer.MAX_VALUE) {
+            List<SortKey> all = new ArrayList<>();
+            source.accept(k -> { if (filter.test(k.task)) all.add(k); });
+            kept = all;
+        } else {
+            // max-heap on cmp: the worst kept result is on top and is the one replaced
+            PriorityQueue<SortKey> heap = new PriorityQueue<>((int) Math.min(need, 1024) + 1, cmp.reversed());
+            source.accept(k -> {
+                if (!filter.test(k.task)) return;
+                if (heap.size() < need) heap.add(k);
+                else if (cmp.compare(k, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(k);
+                }
+            });
+            kept = new ArrayList<>(heap);
+        }
+        kept.sort(cmp);
+        List<Task> out = new ArrayList<>(Math.max(0, kept.size() - offset));
+        for (int i = offset; i < kept.size(); i++) out.add(kept.get(i).task);
+        return out.iterator();
+    }
+
+    // ids that may contain lower, or null when the indexes can't narrow it. Category names are
+    // not in the text indexes (a rename would re-index all its tasks), so the tasks of the
+    // categories whose name contains lower are added from their byCategory buckets.
+    private List<UUID> textCandidates(String lower) {
+        List<UUID> candidates = trigrams.candidates(lower);
+        if (candidates == null) candidates = textIndex.candidates(lower);
+        if (candidates == null) return null;
+        Set<UUID> out = null;
+        for (Category c : categories.all()) {
+            TreeMap<SortKey, Task> bucket = byCategory.get(c);
+            if (bucket == null || !c.getName().toLowerCase().contains(lower)) continue;
+            if (out == null) out = new LinkedHashSet<>(candidates);
+            for (Task t : bucket.values()) out.add(t.getId());
+        }
+        return out != null ? new ArrayList<>(out) : candidates;
     }
 
+    /**
+     * Tasks whose title, description or category name contains q, ignoring case, in Task.compareTo
+     * order.
+     * Results are cached until the next write: a repeated query is answered from the cache, and
+     * one extending a cached query ("inv", then "invo") only rechecks that query's results.
+     */
     public List<Task> search(String q) {
         String lower = q == null ? "" : q.toLowerCase();
-        return tasks.stream()
-            .filter(t -> t.getTitle().toLowerCase().contains(lower) || (t.getDescription()!=null && t.getDescription().toLowerCase().contains(lower)))
-            .sorted()
-            .collect(Collectors.toList());
+        long[] computedAt = { -1 }; // generation of a freshly computed result; -1 for a cache hit
+        List<Task> result = read(() -> {
+            long gen = generation;
+            List<Task> hit = searchCache.get(lower, gen);
+            if (hit != null) {
+                computedAt[0] = -1;
+                return new ArrayList<>(hit);
+            }
+            computedAt[0] = gen;
+            List<Task> narrower = searchCache.refine(lower, gen);
+            if (narrower != null) {
+                // already in order, and a superset of this query's matches
+                List<Task> out = new ArrayList<>();
+                for (Task t : narrower) if (matches(t, lower)) out.add(t);
+                return out;
+            }
+            List<UUID> candidates = textCandidates(lower);
+            if (candidates == null) {
+                // nothing to narrow by: filter the already ordered walk
+                return ordered.values().stream().filter(t -> matches(t, lower)).collect(Collectors.toList());
+            }
+            return candidates.stream().map(tasks::get)
+                .filter(t -> matches(t, lower))
+                .sorted(Comparator.comparing(t -> sortKeys.get(t.getId())))
+                .collect(Collectors.toList());
+        });
+        // cached under the generation it was read at; put ignores it if a write came since
+        if (computedAt[0] >= 0) searchCache.put(lower, computedAt[0], result);
+        return result;
+    }
+
+    private static SearchCache<Task> newSearchCache() {
+        return new SearchCache<>(SEARCH_CACHE_ENTRIES, SEARCH_CACHE_TASKS);
+    }
+
+    private static boolean matches(Task t, String lower) {
+        return t.getTitle().toLowerCase().contains(lower) || (t.getDescription()!=null && t.getDescription().toLowerCase().contains(lower))
+            || (t.getCategory() != null && t.getCategory().getName().toLowerCase().contains(lower));
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        long stamp = readLock();
+        try {
+            fields.put("tasks", new ArrayList<>(tasks.values()));
+            fields.put("categories", new HashSet<>(categories.all()));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        List<Task> stored = (List<Task>) fields.get("tasks", null);
+        Set<Category> cats = (Set<Category>) fields.get("categories", null);
+        lock = new ReadMostlyLock();
+        searchCache = newSearchCache();
+        tasks = new LinkedHashMap<>();
+        categories = new CategoryRegistry();
+        if (cats != null) for (Category c : cats) categories.intern(c);
+        initIndexes();
+        if (stored != null) for (Task t : stored) {
+            internCategory(t);
+            tasks.put(t.getId(), t);
+            index(t);
+        }
+    }
+
+    private void internCategory(Task t) {
+        if (t.getCategory() == null) return;
+        Category shared = categories.intern(t.getCategory());
+        if (shared != t.getCategory()) t.setCategory(shared);
+    }
+
+    // (re)files t in every index; called after each add/update
+    private void index(Task t) {
+        textIndex.put(t.getId(), t.getTitle(), t.getDescription());
+        trigrams.put(t.getId(), t.getTitle(), t.getDescription());
+        indexOrder(t);
+    }
+
+    private void indexOrder(Task t) {
+        SortKey old = sortKeys.get(t.getId());
+        SortKey key = new SortKey(t, old != null ? old.seq : nextSeq++);
+        if (old != null) unfile(old);
+        view = null;
+        ordered.put(key, t);
+        byPriority.get(key.priority).put(key, t);
+        if (key.category != null) byCategory.computeIfAbsent(key.category, c -> new TreeMap<>()).put(key, t);
+        sortKeys.put(t.getId(), key);
+        dueIndex.put(t.getId(), t.getDueDate());
+        facets.put(t);
+    }
+
+    private void unindex(UUID id) {
+        textIndex.remove(id);
+        trigrams.remove(id);
+        dueIndex.remove(id);
+        facets.remove(id);
+        SortKey key = sortKeys.remove(id);
+        if (key != null) unfile(key);
+        view = null;
     }
 
+    private void unfile(SortKey key) {
+        ordered.remove(key);
+        byPriority.get(key.priority).remove(key);
+        if (key.category != null) {
+            TreeMap<SortKey, Task> bucket = byCategory.get(key.category);
+            bucket.remove(key);
+            if (bucket.isEmpty()) byCategory.remove(key.category);
+        }
+    }
+
+    // Compact binary format (see BinaryFormat): categories first, then tasks.
+    // Files written by ObjectOutputStream are still read.
+    // Holds the read lock while writing: other readers carry on, writers wait for the save.
     public void saveToFile(File f) throws IOException {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(f))) {
-            out.writeObject(this);
+        long stamp = readLock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16))) {
+            BinaryFormat.writeHeader(out);
+            out.writeInt(categories.all().size());
+            for (Category c : categories.all()) BinaryFormat.writeString(out, c.getName());
+            out.writeInt(tasks.size());
+            for (Task t : tasks.values()) writeTask(out, t);
+        } finally {
+            lock.unlockRead(stamp);
         }
     }
 
     public static TaskManager loadFromFile(File f) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(f))) {
-            Object obj = in.readObject();
-            if (obj instanceof TaskManager) return (TaskManager) obj;
-            throw new IOException("Invalid data");
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(f), 1 << 16)) {
+            if (BinaryFormat.isJavaSerialized(in)) {
+                Object obj = new ObjectInputStream(in).readObject();
+                if (obj instanceof TaskManager) return (TaskManager) obj;
+                throw new IOException("Invalid data");
+            }
+            DataInputStream din = new DataInputStream(in);
+            BinaryFormat.readHeader(din);
+            TaskManager m = new TaskManager();
+            for (int i = din.readInt(); i > 0; i--) m.categories.intern(BinaryFormat.readString(din));
+            for (int i = din.readInt(); i > 0; i--) m.addTask(readTask(din, m.categories::intern));
+            return m;
+        }
+    }
+
+    static void writeTask(DataOutput out, Task t) throws IOException {
+        int flags = t.getPriority().ordinal();
+        if (t.isCompleted()) flags |= BinaryFormat.F_COMPLETED;
+        if (t.getDueDate() != null) flags |= BinaryFormat.F_DUE;
+        if (t.getTitle() != null) flags |= BinaryFormat.F_TITLE;
+        if (t.getDescription() != null) flags |= BinaryFormat.F_DESCRIPTION;
+        if (t.getCategory() != null) flags |= BinaryFormat.F_CATEGORY;
+        BinaryFormat.writeUuid(out, t.getId());
+        out.writeByte(flags);
+        if (t.getDueDate() != null) out.writeInt(BinaryFormat.toEpochDay(t.getDueDate()));
+        out.writeLong(BinaryFormat.toEpochMilli(t.getCreatedAt()));
+        if (t.getTitle() != null) BinaryFormat.writeString(out, t.getTitle());
+        if (t.getDescription() != null) BinaryFormat.writeString(out, t.getDescription());
+        if (t.getCategory() != null) BinaryFormat.writeString(out, t.getCategory().getName());
+    }
+
+    static Task readTask(DataInput in, Function<String, Category> categories) throws IOException {
+        UUID id = BinaryFormat.readUuid(in);
+        int flags = in.readUnsignedByte();
+        LocalDate due = (flags & BinaryFormat.F_DUE) != 0 ? LocalDate.ofEpochDay(in.readInt()) : null;
+        LocalDateTime created = BinaryFormat.fromEpochMilli(in.readLong());
+        String title = (flags & BinaryFormat.F_TITLE) != 0 ? BinaryFormat.readString(in) : null;
+        String desc = (flags & BinaryFormat.F_DESCRIPTION) != 0 ? BinaryFormat.readString(in) : null;
+        Category cat = (flags & BinaryFormat.F_CATEGORY) != 0
+            ? categories.apply(BinaryFormat.readString(in)) : null;
+        return new Task(id, title, desc, cat, Priority.values()[flags & BinaryFormat.PRIORITY_MASK],
+            due, created, (flags & BinaryFormat.F_COMPLETED) != 0);
+    }
+
+    /**
+     * Copies of the registered categories as of this call. The shared instances are renamed in
+     * place, so they are not handed out in a set: a later rename doesn't show in this one.
+     */
+    public Set<Category> getCategories() {
+        return read(() -> {
+            Set<Category> out = new LinkedHashSet<>();
+            for (Category c : categories.all()) out.add(new Category(c.getName()));
+            return Collections.unmodifiableSet(out);
+        });
+    }
+
+    /** Removes every task; categories stay registered. */
+    public void clearAllTasks() {
+        long stamp = writeLock();
+        try {
+            if (store != null) {
+                for (int slot : storeSlots.values()) store.delete(slot);
+                storeSlots.clear();
+            }
+            tasks.clear();
+            initIndexes();
+            view = null;
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Runs batch holding the write lock once for all the mutations it makes, so readers see
+     * them all at once or not at all and the lock is taken once instead of per change. Mutators
+     * called by batch on this thread skip the lock; reads would deadlock and must not be made.
+     * Nested calls just run inside the outer batch.
+     */
+    void inBatch(Runnable batch) {
+        if (batchWriter == Thread.currentThread()) {
+            batch.run();
+            return;
         }
+        ensureLoaded();
+        long stamp = lock.writeLock();
+        batchWriter = Thread.currentThread();
+        try {
+            batch.run();
+        } finally {
+            batchWriter = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // 0 when this thread is inside inBatch and already holds the lock. Every mutator comes
+    // through here, so this is also where the search cache's generation moves on.
+    private long writeLock() {
+        long stamp = 0;
+        if (batchWriter != Thread.currentThread()) {
+            ensureLoaded();
+            stamp = lock.writeLock();
+        }
+        generation++;
+        return stamp;
+    }
+
+    private void unlockWrite(long stamp) {
+        if (stamp != 0) lock.unlockWrite(stamp);
     }
 
-    public Set<Category> getCategories() { return categories; }
+    // Readers lock through these two, so a manager from open(TaskStore) is loaded before anything
+    // is read from it. Not from inside a read: loading takes the write lock.
+    private <T> T read(Supplier<T> body) {
+        ensureLoaded();
+        return lock.read(body);
+    }
 
-    void clearAllTasks() {
-        throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
+    private long readLock() {
+        ensureLoaded();
+        return lock.readLock();
+    }
+
+    // Decodes and files the store's live records once, in the order they were added (sort ties
+    // fall back to it), under the write lock so that no reader sees part of them. Later calls
+    // only read the volatile flag.
+    private void ensureLoaded() {
+        if (!unloaded) return;
+        long stamp = lock.writeLock();
+        try {
+            if (!unloaded) return;
+            for (int slot : store.liveSlots()) {
+                Task t = store.read(slot, categories::intern);
+                tasks.put(t.getId(), t);
+                index(t);
+                storeSlots.put(t.getId(), slot);
+            }
+            unloaded = false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 }
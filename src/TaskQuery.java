@@ -0,0 +1,128 @@
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Immutable description of a task query for {@link TaskManager#query}: optional text, category,
+ * priority, completed and due-date filters, a sort order and an offset/limit window.
+ * Unset filters match everything. Build with {@link #builder()}:
+ *
+ * <pre>
+ * TaskQuery.builder().text("invoice").categories("Work").completed(false)
+ *     .dueBetween(null, LocalDate.now()).limit(20).build();
+ * </pre>
+ */
+public final class TaskQuery {
+
+    public enum Order {
+        /** Task.compareTo order: priority, then due date, then creation time. */
+        DEFAULT,
+        /** Earliest due date first, tasks without one last. */
+        DUE_DATE,
+        /** Most recently created first. */
+        NEWEST,
+        /** Title, ignoring case. */
+        TITLE
+    }
+
+    private final String text;
+    private final Set<String> categories;
+    private final Set<Priority> priorities;
+    private final Boolean completed;
+    private final boolean dueFilter;
+    private final LocalDate dueFrom, dueTo;
+    private final Order order;
+    private final int offset, limit;
+
+    private TaskQuery(Builder b) {
+        this.text = b.text;
+        this.categories = Collections.unmodifiableSet(new LinkedHashSet<>(b.categories));
+        this.priorities = b.priorities.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(b.priorities));
+        this.completed = b.completed;
+        this.dueFilter = b.dueFilter;
+        this.dueFrom = b.dueFrom;
+        this.dueTo = b.dueTo;
+        this.order = b.order;
+        this.offset = b.offset;
+        this.limit = b.limit;
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    /** Substring to look for in title or description, or null for any. */
+    public String getText() { return text; }
+    /** Category names (matched ignoring case); empty for any. */
+    public Set<String> getCategories() { return categories; }
+    /** Allowed priorities; empty for any. */
+    public Set<Priority> getPriorities() { return priorities; }
+    /** Required completed state, or null for either. */
+    public Boolean getCompleted() { return completed; }
+    /** True if only tasks due within [getDueFrom(), getDueTo()] match; tasks without a due date then never do. */
+    public boolean hasDueFilter() { return dueFilter; }
+    public LocalDate getDueFrom() { return dueFrom; }
+    public LocalDate getDueTo() { return dueTo; }
+    public Order getOrder() { return order; }
+    public int getOffset() { return offset; }
+    /** Maximum number of results, or Integer.MAX_VALUE for no limit. */
+    public int getLimit() { return limit; }
+
+    public static final class Builder {
+        private String text;
+        private final Set<String> categories = new LinkedHashSet<>();
+        private final Set<Priority> priorities = new HashSet<>();
+        private Boolean completed;
+        private boolean dueFilter;
+        private LocalDate dueFrom, dueTo;
+        private Order order = Order.DEFAULT;
+        private int offset;
+        private int limit = Integer.MAX_VALUE;
+
+        private Builder() {}
+
+        public Builder text(String text) {
+            this.text = text == null || text.isEmpty() ? null : text;
+            return this;
+        }
+
+        public Builder categories(String... names) {
+            categories.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        public Builder priorities(Priority... ps) {
+            priorities.addAll(Arrays.asList(ps));
+            return this;
+        }
+
+        public Builder completed(Boolean completed) {
+            this.completed = completed;
+            return this;
+        }
+
+        /** Due between from and to, both inclusive; a null bound is open. */
+        public Builder dueBetween(LocalDate from, LocalDate to) {
+            this.dueFilter = true;
+            this.dueFrom = from;
+            this.dueTo = to;
+            return this;
+        }
+
+        public Builder orderBy(Order order) {
+            this.order = Objects.requireNonNull(order);
+            return this;
+        }
+
+        public Builder offset(int offset) {
+            if (offset < 0) throw new IllegalArgumentException("Negative offset " + offset);
+            this.offset = offset;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            if (limit < 0) throw new IllegalArgumentException("Negative limit " + limit);
+            this.limit = limit;
+            return this;
+        }
+
+        public TaskQuery build() { return new TaskQuery(this); }
+    }
+}
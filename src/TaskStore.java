@@ -0,0 +1,380 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Memory-mapped task storage in two files:
+ * - {@code <base>.tasks}: 16-byte header (magic, version, slot count, heap end) followed by
+ *   fixed 64-byte records: UUID (2 longs), flag byte (see {@link BinaryFormat}, plus a live bit),
+ *   due epoch-day, created epoch millis, (offset, length) of title, description and category,
+ *   and a sequence number giving the order records were allocated in.
+ * - {@code <base>.strings}: append-only heap of UTF-8 bytes referenced by the records.
+ *
+ * Opening maps the files and decodes nothing; records are read on demand by slot. Flag-only
+ * changes ({@link #setCompleted}, {@link #setPriority}) rewrite one byte in place. Deleted slots
+ * are reused, so slot order is not insertion order; {@link #liveSlots} gives the latter. Strings are only appended when they change, so edited text leaves garbage in the
+ * heap; once garbage outweighs the live strings a write {@link #compact compacts} the store.
+ * Records are read and written as {@link Task}s, or field by
+ * field ({@link Decoder}, {@link #write(int, String, String, String, int, LocalDate, LocalDateTime, boolean)})
+ * for other task types.
+ */
+public class TaskStore implements Closeable {
+    private static final int MAGIC = 0x54445354; // "TDST"
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    static final int RECORD = 64;
+
+    private static final int LIVE = 0x80;
+    private static final int ID_HI = 0, ID_LO = 8, FLAGS = 16, DUE = 20, CREATED = 24, TITLE = 32, DESC = 40, CAT = 48, SEQ = 56;
+    private static final int[] STRINGS = { TITLE, DESC, CAT };
+    private static final int MIN_HEAP = 1 << 16;
+    // a heap with less garbage than this is never compacted, however little of it is live
+    static final int COMPACT_MIN_GARBAGE = 1 << 16;
+
+    private final File base;
+    private FileChannel recordsChannel, heapChannel;
+    private MappedByteBuffer records, heap;
+    private int slots;
+    private int heapEnd;
+    // heap bytes referenced by live records, counted on the first write or delete (-1 until then)
+    private int liveBytes = -1;
+    // one more than the highest sequence number of a live record, found on the first allocate (-1 until then)
+    private long nextSequence = -1;
+    private final Deque<Integer> free = new ArrayDeque<>();
+    // id -> slot of the live records, built on the first slotOf call
+    private Map<UUID, Integer> slotsById;
+
+    /** Builds a task of any type from one record's fields; priority is the Priority ordinal. */
+    public interface Decoder<T> {
+        T decode(UUID id, String title, String description, String category, int priority,
+                 LocalDate due, LocalDateTime created, boolean completed);
+    }
+
+    private TaskStore(File base) throws IOException {
+        this.base = base;
+        map();
+        if (recordsChannel.size() == 0 || records.getInt(0) == 0) {
+            records.putInt(0, MAGIC);
+            records.putInt(4, VERSION);
+            writeCounts();
+        } else {
+            if (records.getInt(0) != MAGIC) throw new IOException("Invalid data");
+            if (records.getInt(4) > VERSION) throw new IOException("Unsupported store version " + records.getInt(4));
+            slots = records.getInt(8);
+            heapEnd = records.getInt(12);
+            for (int i = slots - 1; i >= 0; i--) if (!isLive(i)) free.push(i);
+        }
+    }
+
+    /** Whether a store was created at base (its {@code base.tasks} file exists). */
+    public static boolean exists(File base) { return new File(base.getPath() + ".tasks").exists(); }
+
+    /**
+     * Opens (creating if needed) the store files {@code base.tasks} and {@code base.strings},
+     * first finishing or rolling back a compaction that a crash interrupted.
+     */
+    public static TaskStore open(File base) throws IOException {
+        finishCompaction(base);
+        return new TaskStore(base);
+    }
+
+    /** Number of record slots in use, including deleted ones; iterate with {@link #isLive}. */
+    public int slotCount() { return slots; }
+
+    public int size() { return slots - free.size(); }
+
+    public boolean isLive(int slot) { return (records.get(pos(slot) + FLAGS) & LIVE) != 0; }
+
+    public UUID id(int slot) {
+        int p = pos(slot);
+        return new UUID(records.getLong(p + ID_HI), records.getLong(p + ID_LO));
+    }
+
+    /**
+     * Slots of the live records in the order they were allocated (or {@link #moveToEnd moved}
+     * in), which is the order their tasks were added in.
+     */
+    public int[] liveSlots() {
+        List<Integer> live = new ArrayList<>(size());
+        for (int slot = 0; slot < slots; slot++) if (isLive(slot)) live.add(slot);
+        live.sort(Comparator.comparingLong(slot -> records.getLong(pos(slot) + SEQ)));
+        int[] out = new int[live.size()];
+        for (int i = 0; i < out.length; i++) out[i] = live.get(i);
+        return out;
+    }
+
+    /** Puts the record in slot after all others in {@link #liveSlots} order. */
+    public void moveToEnd(int slot) {
+        records.putLong(pos(slot) + SEQ, nextSequence());
+    }
+
+    /** The slot of the live record with this id, or -1. */
+    public int slotOf(UUID id) {
+        if (slotsById == null) {
+            slotsById = new HashMap<>();
+            for (int slot = 0; slot < slots; slot++) if (isLive(slot)) slotsById.put(id(slot), slot);
+        }
+        Integer slot = slotsById.get(id);
+        return slot != null ? slot : -1;
+    }
+
+    /** Stores a new task and returns its slot. */
+    public int append(Task t) throws IOException {
+        int slot = allocate(t.getId());
+        write(slot, t);
+        return slot;
+    }
+
+    /** Reserves a slot for a new task with this id and returns it; the record is live once written. */
+    public int allocate(UUID id) throws IOException {
+        int slot = free.isEmpty() ? slots : free.pop();
+        if (slot == slots) {
+            ensureRecords(slot + 1);
+            slots++;
+        }
+        int p = pos(slot);
+        records.put(p + FLAGS, (byte) 0);
+        records.putLong(p + ID_HI, id.getMostSignificantBits());
+        records.putLong(p + ID_LO, id.getLeastSignificantBits());
+        records.putInt(p + TITLE + 4, -1);
+        records.putInt(p + DESC + 4, -1);
+        records.putInt(p + CAT + 4, -1);
+        records.putLong(p + SEQ, nextSequence());
+        if (slotsById != null) slotsById.put(id, slot);
+        return slot;
+    }
+
+    /** Rewrites the record in slot from t; strings are appended to the heap only if they changed. */
+    public void write(int slot, Task t) throws IOException {
+        write(slot, t.getTitle(), t.getDescription(), t.getCategory() != null ? t.getCategory().getName() : null,
+              t.getPriority().ordinal(), t.getDueDate(), t.getCreatedAt(), t.isCompleted());
+    }
+
+    /**
+     * Rewrites the record in slot field by field. The flag byte, which makes the record live, is
+     * written last, so a slot just allocated is not live with half its fields.
+     */
+    public void write(int slot, String title, String description, String category, int priority,
+                      LocalDate due, LocalDateTime created, boolean completed) throws IOException {
+        int day = due != null ? BinaryFormat.toEpochDay(due) : 0;
+        int p = pos(slot);
+        countLiveBytes();
+        liveBytes -= stringBytes(p);
+        records.putInt(p + DUE, day);
+        records.putLong(p + CREATED, BinaryFormat.toEpochMilli(created));
+        putString(p + TITLE, title);
+        putString(p + DESC, description);
+        putString(p + CAT, category);
+        liveBytes += stringBytes(p);
+        int f = priority;
+        if (completed) f |= BinaryFormat.F_COMPLETED;
+        if (due != null) f |= BinaryFormat.F_DUE;
+        records.put(p + FLAGS, (byte) (f | LIVE));
+        writeCounts();
+        if (garbage() > Math.max(liveBytes, COMPACT_MIN_GARBAGE)) compact();
+    }
+
+    public void setCompleted(int slot, boolean completed) {
+        int p = pos(slot) + FLAGS;
+        int f = records.get(p);
+        records.put(p, (byte) (completed ? f | BinaryFormat.F_COMPLETED : f & ~BinaryFormat.F_COMPLETED));
+    }
+
+    public void setPriority(int slot, Priority priority) {
+        int p = pos(slot) + FLAGS;
+        records.put(p, (byte) ((records.get(p) & ~BinaryFormat.PRIORITY_MASK) | priority.ordinal()));
+    }
+
+    /**
+     * Frees the record in slot. A slot that is not live is left alone: it is already on the free
+     * list, or was allocated and never written, and is then freed when the store is next opened.
+     */
+    public void delete(int slot) {
+        if (!isLive(slot)) return;
+        countLiveBytes();
+        liveBytes -= stringBytes(pos(slot));
+        int p = pos(slot) + FLAGS;
+        records.put(p, (byte) (records.get(p) & ~LIVE));
+        free.push(slot);
+        if (slotsById != null) slotsById.remove(id(slot));
+    }
+
+    /** Decodes the task in slot, resolving the category name through {@code categories} (e.g. a registry's intern). */
+    public Task read(int slot, Function<String, Category> categories) {
+        return read(slot, (id, title, description, category, priority, due, created, completed) ->
+            new Task(id, title, description, category != null ? categories.apply(category) : null,
+                     Priority.values()[priority], due, created, completed));
+    }
+
+    /** Decodes the task in slot through decoder. */
+    public <T> T read(int slot, Decoder<T> decoder) {
+        int p = pos(slot);
+        int f = records.get(p + FLAGS);
+        return decoder.decode(id(slot), getString(p + TITLE), getString(p + DESC), getString(p + CAT),
+            f & BinaryFormat.PRIORITY_MASK,
+            (f & BinaryFormat.F_DUE) != 0 ? LocalDate.ofEpochDay(records.getInt(p + DUE)) : null,
+            BinaryFormat.fromEpochMilli(records.getLong(p + CREATED)),
+            (f & BinaryFormat.F_COMPLETED) != 0);
+    }
+
+    /** Bytes at the end of the heap file that no live record refers to any more. */
+    int garbage() {
+        countLiveBytes();
+        return heapEnd - liveBytes;
+    }
+
+    /**
+     * Rewrites the store into fresh files, {@code base.tasks.tmp} and {@code base.strings.new},
+     * that hold only the strings of live records, then renames them over the current ones;
+     * slots stay as they are. Renaming the records file to {@code base.tasks.new} commits: a
+     * crash before that leaves the old files in use, and {@link #open} completes the renames of
+     * one after it. Called by write once the heap is more garbage than live strings.
+     */
+    public void compact() throws IOException {
+        countLiveBytes();
+        Path tasksTmp = file(base, ".tasks.tmp"), tasksNew = file(base, ".tasks.new"), stringsNew = file(base, ".strings.new");
+        StandardOpenOption[] opts = { StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                      StandardOpenOption.READ, StandardOpenOption.WRITE };
+        int end = 0;
+        try (FileChannel rc = FileChannel.open(tasksTmp, opts); FileChannel hc = FileChannel.open(stringsNew, opts)) {
+            MappedByteBuffer r = rc.map(FileChannel.MapMode.READ_WRITE, 0, records.capacity());
+            MappedByteBuffer h = hc.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(liveBytes, MIN_HEAP));
+            r.put(0, records, 0, pos(slots));
+            for (int slot = 0; slot < slots; slot++) {
+                int p = pos(slot);
+                boolean live = isLive(slot);
+                for (int field : STRINGS) {
+                    int len = records.getInt(p + field + 4);
+                    if (!live || len < 0) {
+                        r.putInt(p + field + 4, -1);
+                        continue;
+                    }
+                    h.put(end, heap, records.getInt(p + field), len);
+                    r.putInt(p + field, end);
+                    end += len;
+                }
+            }
+            r.putInt(12, end);
+            r.force();
+            h.force();
+        }
+        Files.move(tasksTmp, tasksNew, StandardCopyOption.ATOMIC_MOVE);
+        recordsChannel.close();
+        heapChannel.close();
+        // on failure this store is left closed; opening the files again finishes the renames
+        finishCompaction(base);
+        map();
+        heapEnd = end;
+        liveBytes = end;
+    }
+
+    public void force() {
+        records.force();
+        heap.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        recordsChannel.close();
+        heapChannel.close();
+    }
+
+    private static int pos(int slot) { return HEADER + slot * RECORD; }
+
+    private static Path file(File base, String suffix) { return new File(base.getPath() + suffix).toPath(); }
+
+    private void map() throws IOException {
+        StandardOpenOption[] opts = { StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE };
+        recordsChannel = FileChannel.open(file(base, ".tasks"), opts);
+        heapChannel = FileChannel.open(file(base, ".strings"), opts);
+        records = recordsChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(recordsChannel.size(), HEADER + 1024L * RECORD));
+        heap = heapChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(heapChannel.size(), MIN_HEAP));
+    }
+
+    // Completes a compaction that got as far as base.tasks.new, or drops the files of one that did not.
+    private static void finishCompaction(File base) throws IOException {
+        Path tasksNew = file(base, ".tasks.new"), stringsNew = file(base, ".strings.new");
+        if (Files.exists(tasksNew)) {
+            if (Files.exists(stringsNew)) Files.move(stringsNew, file(base, ".strings"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tasksNew, file(base, ".tasks"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.deleteIfExists(stringsNew);
+        }
+        Files.deleteIfExists(file(base, ".tasks.tmp"));
+    }
+
+    private long nextSequence() {
+        if (nextSequence < 0) {
+            long max = 0;
+            for (int slot = 0; slot < slots; slot++) if (isLive(slot)) max = Math.max(max, records.getLong(pos(slot) + SEQ));
+            nextSequence = max + 1;
+        }
+        return nextSequence++;
+    }
+
+    private void countLiveBytes() {
+        if (liveBytes >= 0) return;
+        int n = 0;
+        for (int slot = 0; slot < slots; slot++) if (isLive(slot)) n += stringBytes(pos(slot));
+        liveBytes = n;
+    }
+
+    private int stringBytes(int p) {
+        int n = 0;
+        for (int field : STRINGS) n += Math.max(0, records.getInt(p + field + 4));
+        return n;
+    }
+
+    private void writeCounts() {
+        records.putInt(8, slots);
+        records.putInt(12, heapEnd);
+    }
+
+    private void putString(int at, String s) throws IOException {
+        if (s == null) {
+            records.putInt(at + 4, -1);
+            return;
+        }
+        if (s.equals(getString(at))) return;
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ensureHeap(heapEnd + bytes.length);
+        heap.put(heapEnd, bytes);
+        records.putInt(at, heapEnd);
+        records.putInt(at + 4, bytes.length);
+        heapEnd += bytes.length;
+    }
+
+    private String getString(int at) {
+        int len = records.getInt(at + 4);
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        heap.get(records.getInt(at), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void ensureRecords(int slotCount) throws IOException {
+        long need = (long) pos(slotCount);
+        if (need > records.capacity()) records = recordsChannel.map(FileChannel.MapMode.READ_WRITE, 0, grow(records.capacity(), need));
+    }
+
+    private void ensureHeap(long need) throws IOException {
+        if (need > heap.capacity()) heap = heapChannel.map(FileChannel.MapMode.READ_WRITE, 0, grow(heap.capacity(), need));
+    }
+
+    private static long grow(long capacity, long need) {
+        long size = capacity;
+        while (size < need) size *= 2;
+        if (size > Integer.MAX_VALUE) throw new IllegalStateException("Task store exceeds 2 GB");
+        return size;
+    }
+}
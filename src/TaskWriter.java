@@ -0,0 +1,172 @@
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Single writer for a {@link TaskManager}. Every mutation submitted here becomes a command on a
+ * bounded lock-free {@link RingBuffer}; one writer thread drains the buffer in batches and applies
+ * each batch under a single write lock (see TaskManager#inBatch), so submitting threads never
+ * contend on the lock with one another and readers see each batch appear at once.
+ *
+ * Each method returns a future that completes once its batch is visible to readers, or
+ * completes exceptionally if the command threw. Commands apply in submission order per thread.
+ * Methods never throw: when the writer is closed the future fails with
+ * RejectedExecutionException. A full buffer makes the submitting thread wait for room, except
+ * the writer thread itself (e.g. a dependent action of a returned future), whose submission
+ * fails instead of waiting on itself. Dependent actions run on the writer thread, so keep them short.
+ *
+ * Only this TaskManager, the one API callers share between threads, has a TaskWriter. The app's
+ * TodoApp.TaskManager is not routed through one: its list model must hear of each change on the
+ * EDT while the change is current, so the EDT already is its single writer, and its readers
+ * never take a lock.
+ */
+public final class TaskWriter implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH = 256;
+
+    private static final class Command {
+        final Consumer<TaskManager> op;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Command(Consumer<TaskManager> op) { this.op = op; }
+    }
+
+    private final TaskManager manager;
+    private final RingBuffer<Command> ring;
+    private final int maxBatch;
+    private final Thread thread;
+    private volatile boolean closed;
+    // parked with nothing to do; producers unpark it after offering
+    private volatile boolean sleeping;
+    // producers between their closed check and their offer, so close() can't strand a command
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    public TaskWriter(TaskManager manager) {
+        this(manager, DEFAULT_CAPACITY, DEFAULT_BATCH);
+    }
+
+    /** capacity is rounded up to a power of two (at least 2); a batch applies at most maxBatch commands. */
+    public TaskWriter(TaskManager manager, int capacity, int maxBatch) {
+        if (maxBatch < 1) throw new IllegalArgumentException("maxBatch " + maxBatch);
+        this.manager = Objects.requireNonNull(manager);
+        this.ring = new RingBuffer<>(capacity);
+        this.maxBatch = maxBatch;
+        this.thread = new Thread(this::run, "task-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public CompletableFuture<Void> add(Task t) { return submit(m -> m.addTask(t)); }
+
+    public CompletableFuture<Void> update(Task t) { return submit(m -> m.updateTask(t)); }
+
+    public CompletableFuture<Void> remove(UUID id) { return submit(m -> m.removeTask(id)); }
+
+    public CompletableFuture<Void> toggleCompleted(UUID id) { return submit(m -> m.toggleCompleted(id)); }
+
+    public CompletableFuture<Void> setPriority(UUID id, Priority p) { return submit(m -> m.setPriority(id, p)); }
+
+    public CompletableFuture<Void> renameCategory(String oldName, String newName) {
+        return submit(m -> m.renameCategory(oldName, newName));
+    }
+
+    public CompletableFuture<Void> clear() { return submit(TaskManager::clearAllTasks); }
+
+    private CompletableFuture<Void> submit(Consumer<TaskManager> op) {
+        Command c = new Command(op);
+        // counted before checking closed: the writer only exits once closed is set and no
+        // submitter is left, so a command that got into the buffer is always applied
+        submitting.incrementAndGet();
+        try {
+            if (closed) return rejected(c, "task writer is closed");
+            for (int spins = 0; !ring.offer(c); spins++) {
+                if (closed) return rejected(c, "task writer is closed");
+                if (Thread.currentThread() == thread) return rejected(c, "task writer queue is full");
+                if (spins < 100) Thread.onSpinWait();
+                else LockSupport.parkNanos(10_000L);
+            }
+        } finally {
+            submitting.decrementAndGet();
+        }
+        // the offer's store must be ordered before this load, pairing with the fence in loop():
+        // either the writer sees the command or this thread sees it sleeping
+        VarHandle.fullFence();
+        if (sleeping) LockSupport.unpark(thread);
+        return c.done;
+    }
+
+    private static CompletableFuture<Void> rejected(Command c, String why) {
+        c.done.completeExceptionally(new RejectedExecutionException(why));
+        return c.done;
+    }
+
+    /**
+     * Applies everything already submitted, then stops the writer thread. Waits for the writer
+     * even if interrupted, and then restores the interrupt flag.
+     */
+    @Override
+    public void close() {
+        if (Thread.currentThread() == thread) throw new IllegalStateException("close() from the writer thread");
+        closed = true;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void run() {
+        List<Command> batch = new ArrayList<>(Math.min(maxBatch, ring.capacity()));
+        try {
+            loop(batch);
+        } finally {
+            // nothing is left after a normal exit; if the loop itself failed, stop taking commands
+            // and fail every one not yet completed so no submitter waits forever
+            closed = true;
+            RejectedExecutionException dead = new RejectedExecutionException("task writer stopped");
+            for (Command c : batch) c.done.completeExceptionally(dead);
+            while (submitting.get() > 0 || !ring.isEmpty()) {
+                if (ring.drain(c -> c.done.completeExceptionally(dead), ring.capacity()) == 0) Thread.onSpinWait();
+            }
+        }
+    }
+
+    private void loop(List<Command> batch) {
+        for (;;) {
+            ring.drain(batch::add, maxBatch);
+            if (batch.isEmpty()) {
+                if (closed && submitting.get() == 0 && ring.isEmpty()) return;
+                sleeping = true;
+                VarHandle.fullFence(); // see submit()
+                if (ring.isEmpty() && !closed) LockSupport.park(this);
+                sleeping = false;
+                continue;
+            }
+            Throwable[] failed = new Throwable[batch.size()];
+            manager.inBatch(() -> {
+                for (int i = 0; i < failed.length; i++) {
+                    try {
+                        batch.get(i).op.accept(manager);
+                    } catch (Throwable ex) { // an Error must not kill the only writer
+                        failed[i] = ex;
+                    }
+                }
+            });
+            // only now is the batch visible to readers
+            for (int i = 0; i < failed.length; i++) {
+                if (failed[i] == null) batch.get(i).done.complete(null);
+                else batch.get(i).done.completeExceptionally(failed[i]);
+            }
+            batch.clear();
+        }
+    }
+}
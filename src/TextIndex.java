@@ -0,0 +1,99 @@
+import java.util.*;
+
+/**
+ * Inverted index from lowercased word tokens to the keys of the items that contain them.
+ * Tokens are maximal runs of letters/digits. The index is updated incrementally:
+ * {@link #put} re-tokenizes one item and only touches the postings that changed.
+ *
+ * {@link #candidates} keeps substring semantics: it returns a superset of the items
+ * whose fields contain the query, which the caller then confirms with {@code contains}.
+ */
+public class TextIndex<K> {
+
+    private static final class Entry {
+        final long seq;
+        Set<String> tokens = Collections.emptySet();
+        Entry(long seq) { this.seq = seq; }
+    }
+
+    private final Map<String, Set<K>> postings = new HashMap<>();
+    private final Map<K, Entry> entries = new HashMap<>();
+    private long nextSeq;
+
+    /** Indexes (or re-indexes) the given fields for key; null fields are skipped. */
+    public void put(K key, String... fields) {
+        Set<String> tokens = new HashSet<>();
+        for (String f : fields) if (f != null) tokens.addAll(tokenize(f.toLowerCase()));
+        Entry e = entries.get(key);
+        if (e == null) { e = new Entry(nextSeq++); entries.put(key, e); }
+        for (String old : e.tokens) if (!tokens.contains(old)) unpost(old, key);
+        for (String tok : tokens) if (!e.tokens.contains(tok)) postings.computeIfAbsent(tok, x -> new HashSet<>()).add(key);
+        e.tokens = tokens;
+    }
+
+    public void remove(K key) {
+        Entry e = entries.remove(key);
+        if (e != null) for (String tok : e.tokens) unpost(tok, key);
+    }
+
+    /**
+     * Keys that may contain {@code lowerQuery} as a substring, in first-indexed order,
+     * by intersecting one posting union per query token. A token bounded by separators
+     * in the query must match a whole indexed word; a token touching the query edge only
+     * needs to be a prefix/suffix/infix of one. Returns null if the query has no word
+     * characters, meaning the index cannot narrow the search.
+     */
+    public List<K> candidates(String lowerQuery) {
+        List<int[]> spans = spans(lowerQuery);
+        if (spans.isEmpty()) return null;
+        List<Set<K>> sets = new ArrayList<>(spans.size());
+        for (int[] sp : spans) {
+            String tok = lowerQuery.substring(sp[0], sp[1]);
+            boolean left = sp[0] > 0, right = sp[1] < lowerQuery.length();
+            Set<K> s;
+            if (left && right) {
+                s = postings.getOrDefault(tok, Collections.emptySet());
+            } else {
+                s = new HashSet<>();
+                for (Map.Entry<String, Set<K>> p : postings.entrySet()) {
+                    String term = p.getKey();
+                    boolean hit = left ? term.startsWith(tok) : right ? term.endsWith(tok) : term.contains(tok);
+                    if (hit) s.addAll(p.getValue());
+                }
+            }
+            if (s.isEmpty()) return new ArrayList<>();
+            sets.add(s);
+        }
+        sets.sort(Comparator.comparingInt(Set::size));
+        List<K> out = new ArrayList<>();
+        outer:
+        for (K k : sets.get(0)) {
+            for (int i = 1; i < sets.size(); i++) if (!sets.get(i).contains(k)) continue outer;
+            out.add(k);
+        }
+        out.sort(Comparator.comparingLong(k -> entries.get(k).seq));
+        return out;
+    }
+
+    static List<String> tokenize(String lower) {
+        List<String> out = new ArrayList<>();
+        for (int[] sp : spans(lower)) out.add(lower.substring(sp[0], sp[1]));
+        return out;
+    }
+
+    private static List<int[]> spans(String s) {
+        List<int[]> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= s.length(); i++) {
+            boolean word = i < s.length() && Character.isLetterOrDigit(s.charAt(i));
+            if (word && start < 0) start = i;
+            else if (!word && start >= 0) { out.add(new int[]{start, i}); start = -1; }
+        }
+        return out;
+    }
+
+    private void unpost(String tok, K key) {
+        Set<K> s = postings.get(tok);
+        if (s != null && s.remove(key) && s.isEmpty()) postings.remove(tok);
+    }
+}
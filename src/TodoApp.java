@@ -4,17 +4,30 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Single-file ready-to-run Todo application with improved GUI layout.
  * - All functionality (add/edit/delete/toggle/search/save/clear) preserved.
- * - Uses serialization to save/load tasks to todo_data.ser in user home.
+ * - Saves/loads tasks to a memory-mapped store in user home (todo_data.tasks/.strings, see
+ *   TaskStore); a todo_data.ser from earlier versions is loaded once and replaced by it.
+ * - edits in between are appended to todo_data.journal and replayed on startup (a
+ *   todo_data.ser.journal from earlier versions is moved there first).
  *
  * To run:
  *   javac TodoApp.java
@@ -57,6 +70,32 @@ public class TodoApp extends JFrame {
             this.completed = false;
         }
 
+        private Task(UUID id, String title, String description, Category category, Priority priority,
+                     LocalDate dueDate, LocalDateTime createdAt, boolean completed) {
+            this.id = id;
+            this.title = title;
+            this.description = description;
+            this.category = category;
+            this.priority = priority;
+            this.dueDate = dueDate;
+            this.createdAt = createdAt;
+            this.completed = completed;
+        }
+
+        private Task(Task o) {
+            this.id = o.id;
+            this.title = o.title;
+            this.description = o.description;
+            this.category = o.category;
+            this.priority = o.priority;
+            this.dueDate = o.dueDate;
+            this.createdAt = o.createdAt;
+            this.completed = o.completed;
+        }
+
+        /** Detached field-by-field copy (same id), safe to hand to another thread. */
+        public Task copy() { return new Task(this); }
+
         public UUID getId() { return id; }
         public String getTitle() { return title; }
         public void setTitle(String title) { this.title = title; }
@@ -77,49 +116,1224 @@ public class TodoApp extends JFrame {
         public String toString() { return title; }
     }
 
-    public static class TaskManager implements Serializable {
+    /**
+     * The app's task list. Thread safety: any thread may read. getTasks(), findById(), snapshot()
+     * and the traversals read the current immutable version and never lock. Search, the date
+     * views and the display order walk mutable indexes, so they hold the read lock of a
+     * {@link ReadMostlyLock}: they don't block each other, only wait out a write. Mutations
+     * hold the write lock, and the DisplayListener is then called on the mutating thread after the
+     * lock is released. The UI list model listens, so the app mutates only on the EDT, which is
+     * then its single writer (so, unlike the API's TaskManager, it has no TaskWriter). The bulk
+     * writes (addAll, updateAll, completeAll, removeAll) take the lock once; up to
+     * {@link #BULK_ROW_EVENTS} changed rows are reported row by row, more as one displayReplaced.
+     */
+    public static class TaskManager implements Serializable, Iterable<Task> {
         private static final long serialVersionUID = 1L;
-        private final List<Task> tasks = new ArrayList<>();
+        static final int LOAD_CHUNK = 2000;
+        static final int SEARCH_CACHE_ENTRIES = 64;
+        static final int SEARCH_CACHE_TASKS = 1 << 20;
+        static final int BULK_ROW_EVENTS = 64;
+        // on-disk form stays "List<Task> tasks" so existing todo_data.ser files keep loading
+        private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("tasks", List.class)
+        };
+
+        // id -> task in insertion order. Each change makes a new immutable version sharing
+        // everything else with the old one, so snapshot() and iterators just keep a version.
+        private transient volatile PersistentOrderedMap<UUID, Task> tasks = PersistentOrderedMap.empty();
+        // one shared Category per name; the dialog resolves names through category(String)
+        private transient Map<String, Category> categoryPool = new ConcurrentHashMap<>();
+        // search indexes, built on first search() and then kept up to date:
+        // words of title/description/category, and their 3-char windows
+        private transient TextIndex<UUID> textIndex;
+        private transient TrigramIndex<UUID> trigrams;
+        // while the first search builds them outside the lock: the writes made meanwhile, as
+        // id -> stored task (null once removed) with a null id for a clear, replayed on publishing
+        private transient List<Map.Entry<UUID, Task>> indexBacklog;
+        // held by the one thread building the search indexes
+        private transient Object indexBuild = new Object();
+        // due date -> ids for the date views, built on first date query and then kept up to date
+        private transient DueIndex<UUID> dueIndex;
+        // list display order (incomplete first), built on first use and then kept up to date
+        private transient DisplayOrder order;
+        private transient Map<UUID, DisplayOrder.Node> nodes;
+        private transient DisplayListener displayListener;
+        // guards everything above except tasks and categoryPool, which need no lock to read
+        private transient ReadMostlyLock lock = new ReadMostlyLock();
+        // display events of the current write, delivered once its lock is released
+        private transient List<Runnable> events = new ArrayList<>();
+        // row events of the current bulk write so far, -1 outside one; past BULK_ROW_EVENTS they
+        // are dropped and the write ends with one displayReplaced
+        private transient int bulkEvents = -1;
+        // bumped by every change to the tasks; search results are cached per generation
+        private transient long generation;
+        private transient SearchCache<Task> searchCache = newSearchCache();
+
+        /**
+         * Told about every change to the display order, as positions in it. Calls come on the
+         * mutating thread after the change is complete, so the listener may read the manager.
+         */
+        public interface DisplayListener {
+            void taskInserted(int index);
+            void taskRemoved(int index);
+            void taskChanged(int index);
+            void displayCleared(int oldSize);
+            /** The display order changed in too many rows to list (a large bulk write); it had oldSize rows before. */
+            void displayReplaced(int oldSize);
+        }
 
-        public List<Task> getTasks() { return new ArrayList<>(tasks); }
-        public void addTask(Task t) { tasks.add(t); }
+        /** Order of the date views: priority (high first), then due date, then creation time. */
+        static final Comparator<Task> DUE_VIEW_ORDER = Comparator.comparing(Task::getPriority, Comparator.reverseOrder())
+            .thenComparing(Task::getDueDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Task::getCreatedAt);
+
+        public List<Task> getTasks() {
+            PersistentOrderedMap<UUID, Task> current = tasks;
+            List<Task> out = new ArrayList<>(current.size());
+            current.forEach(out::add);
+            return out;
+        }
+
+        /** SIZED, ORDERED (insertion order), IMMUTABLE view of the tasks at the time of the call. */
+        @Override
+        public Spliterator<Task> spliterator() { return tasks.spliterator(); }
+        @Override
+        public Iterator<Task> iterator() { return tasks.iterator(); }
+        @Override
+        public void forEach(Consumer<? super Task> action) { tasks.forEach(action); }
+        public Stream<Task> stream() { return StreamSupport.stream(spliterator(), false); }
+        public Stream<Task> parallelStream() { return StreamSupport.stream(spliterator(), true); }
+
+        public Task findById(UUID id) { return tasks.get(id); }
+        public void addTask(Task t) { putTask(t); }
+        /**
+         * Adds the task, or replaces the stored task with the same id. Stored tasks are shared
+         * with snapshots and must not be modified afterwards: to change one, copy() it, modify
+         * the copy and pass that to updateTask.
+         */
+        public void putTask(Task t) {
+            long stamp = lock.writeLock();
+            try {
+                put(t);
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
         public void updateTask(Task t) {
-            for (int i = 0; i < tasks.size(); i++) {
-                if (tasks.get(i).getId().equals(t.getId())) { tasks.set(i, t); return; }
+            long stamp = lock.writeLock();
+            try {
+                if (tasks.containsKey(t.getId())) put(t);
+            } finally {
+                unlockWrite(stamp);
             }
         }
         public void removeTask(UUID id) {
-            tasks.removeIf(t -> t.getId().equals(id));
+            long stamp = lock.writeLock();
+            try {
+                tasks = tasks.minus(id);
+                unindex(id);
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+        public void clearAllTasks() {
+            long stamp = lock.writeLock();
+            try {
+                int shown = order != null ? order.size() : 0;
+                generation++;
+                tasks = PersistentOrderedMap.empty();
+                // indexes that were built stay built (just empty), so readers never see them vanish
+                if (textIndex != null) {
+                    textIndex = new TextIndex<>();
+                    trigrams = new TrigramIndex<>();
+                }
+                if (indexBacklog != null) indexBacklog.add(new AbstractMap.SimpleEntry<>(null, null));
+                if (dueIndex != null) dueIndex = new DueIndex<>();
+                if (order != null) {
+                    order = new DisplayOrder();
+                    nodes = new HashMap<>();
+                }
+                event(l -> l.displayCleared(shown));
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        // ---- bulk writes: one lock and one persistence record per call ----
+
+        /** Adds or replaces every task in one write; as with putTask, they must not be modified afterwards. */
+        public void addAll(Collection<Task> ts) {
+            bulk(() -> {
+                for (Task t : ts) put(t);
+                return null;
+            });
+        }
+
+        /**
+         * Applies edit to a copy of each stored task in ids (unknown ids are skipped) and stores the
+         * copies in one write. Returns the stored copies, e.g. for the journal.
+         */
+        public List<Task> updateAll(Collection<UUID> ids, Consumer<Task> edit) {
+            return bulk(() -> {
+                List<Task> out = new ArrayList<>(ids.size());
+                for (UUID id : ids) {
+                    Task cur = tasks.get(id);
+                    if (cur == null) continue;
+                    Task t = cur.copy();
+                    edit.accept(t);
+                    put(t);
+                    out.add(t);
+                }
+                return out;
+            });
+        }
+
+        /** Marks the tasks in ids completed; returns the ones that changed. */
+        public List<Task> completeAll(Collection<UUID> ids) {
+            return bulk(() -> {
+                List<Task> out = new ArrayList<>();
+                for (UUID id : ids) {
+                    Task cur = tasks.get(id);
+                    if (cur == null || cur.isCompleted()) continue;
+                    Task t = cur.copy();
+                    t.setCompleted(true);
+                    put(t);
+                    out.add(t);
+                }
+                return out;
+            });
+        }
+
+        /** Removes every task matching filter in a single pass and returns them. */
+        public List<Task> removeAll(Predicate<Task> filter) {
+            return bulk(() -> removeMatching(filter));
+        }
+
+        /**
+         * Removes the tasks in ids (unknown ids are skipped) and returns them. A few ids cost
+         * O(log n) each; a quarter of the list or more is removed in one rebuild instead.
+         */
+        public List<Task> removeAll(Collection<UUID> ids) {
+            return bulk(() -> {
+                if (ids.size() * 4L >= tasks.size()) {
+                    Set<UUID> set = new HashSet<>(ids);
+                    return removeMatching(t -> set.contains(t.getId()));
+                }
+                List<Task> removed = new ArrayList<>(ids.size());
+                for (UUID id : ids) {
+                    Task t = tasks.get(id);
+                    if (t == null) continue;
+                    tasks = tasks.minus(id);
+                    unindex(id);
+                    removed.add(t);
+                }
+                return removed;
+            });
         }
-        public void clearAllTasks() { tasks.clear(); }
+
+        private List<Task> removeMatching(Predicate<Task> filter) {
+            List<Task> removed = new ArrayList<>();
+            PersistentOrderedMap.Builder<UUID, Task> kept = new PersistentOrderedMap.Builder<>();
+            for (Task t : tasks) {
+                if (!filter.test(t)) kept.put(t.getId(), t);
+                else removed.add(t);
+            }
+            if (removed.isEmpty()) return removed;
+            // the scan is O(n) anyway, so rebuild the survivors once instead of a minus() per removed task
+            tasks = kept.build();
+            for (Task t : removed) unindex(t.getId());
+            return removed;
+        }
+
+        // runs body under the write lock; if it changed more than BULK_ROW_EVENTS rows, the
+        // listener gets one displayReplaced instead of the row events
+        private <T> T bulk(Supplier<T> body) {
+            long stamp = lock.writeLock();
+            int shown = order != null ? order.size() : 0;
+            bulkEvents = 0;
+            try {
+                return body.get();
+            } finally {
+                boolean replaced = bulkEvents > BULK_ROW_EVENTS;
+                bulkEvents = -1;
+                if (replaced) {
+                    events.clear();
+                    event(l -> l.displayReplaced(shown));
+                }
+                unlockWrite(stamp);
+            }
+        }
+
+        private void put(Task t) {
+            generation++;
+            internCategory(t);
+            tasks = tasks.plus(t.getId(), t);
+            index(t);
+            place(t);
+        }
+
+        private void unindex(UUID id) {
+            generation++;
+            if (indexBacklog != null) indexBacklog.add(new AbstractMap.SimpleEntry<>(id, null));
+            if (textIndex != null) {
+                textIndex.remove(id);
+                trigrams.remove(id);
+            }
+            if (dueIndex != null) dueIndex.remove(id);
+            DisplayOrder.Node n = nodes != null ? nodes.remove(id) : null;
+            if (n != null) {
+                int i = order.indexOf(n);
+                order.remove(n);
+                event(l -> l.taskRemoved(i));
+            }
+        }
+
+        private void event(Consumer<DisplayListener> e) {
+            DisplayListener l = displayListener;
+            if (l == null) return;
+            if (bulkEvents >= 0 && ++bulkEvents > BULK_ROW_EVENTS) return; // replaced at the end of the bulk write
+            events.add(() -> e.accept(l));
+        }
+
+        // releases the write lock, then delivers the write's display events; the listener reads
+        // positions back through displayAt(), which would deadlock under the write lock
+        private void unlockWrite(long stamp) {
+            Runnable[] fire = events.toArray(new Runnable[0]);
+            events.clear();
+            lock.unlockWrite(stamp);
+            for (Runnable r : fire) r.run();
+        }
+
+        /** The shared Category instance for name. */
+        public Category category(String name) {
+            return categoryPool.computeIfAbsent(name, Category::new);
+        }
+
+        private void internCategory(Task t) {
+            Category c = t.getCategory();
+            if (c == null || c.getName() == null) return;
+            Category shared = categoryPool.putIfAbsent(c.getName(), c);
+            if (shared != null && shared != c) t.setCategory(shared);
+        }
+
+        // ---- display order: incomplete tasks, then completed ones, each in insertion order ----
+
+        public void setDisplayListener(DisplayListener l) {
+            long stamp = lock.writeLock();
+            displayListener = l;
+            lock.unlockWrite(stamp);
+        }
+        public int displaySize() {
+            ensureDisplayOrder();
+            return lock.read(() -> order.size());
+        }
+        public Task displayAt(int index) {
+            ensureDisplayOrder();
+            return lock.read(() -> order.get(index));
+        }
+
+        // lazily built indexes are only ever replaced, never dropped, so once one of these
+        // has returned the index can be read under the lock without checking for null again
+        private void ensureDisplayOrder() {
+            if (order != null) return;
+            long stamp = lock.writeLock();
+            try {
+                if (order == null) {
+                    nodes = new HashMap<>();
+                    order = new DisplayOrder();
+                    for (Task t : tasks) {
+                        DisplayOrder.Node n = new DisplayOrder.Node(t);
+                        order.add(n);
+                        nodes.put(t.getId(), n);
+                    }
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        private void place(Task t) {
+            if (order == null) return;
+            DisplayOrder.Node n = nodes.get(t.getId());
+            if (n == null) {
+                n = new DisplayOrder.Node(t);
+                order.add(n);
+                nodes.put(t.getId(), n);
+                int at = order.indexOf(n);
+                event(l -> l.taskInserted(at));
+                return;
+            }
+            n.task = t;
+            int from = order.indexOf(n);
+            if (n.completed == t.isCompleted()) {
+                event(l -> l.taskChanged(from));
+                return;
+            }
+            order.setCompleted(n, t.isCompleted());
+            int to = order.indexOf(n);
+            event(l -> l.taskRemoved(from));
+            event(l -> l.taskInserted(to));
+        }
+
+        /**
+         * The current state for handing to another thread (e.g. the persistence worker), in O(1):
+         * it shares this manager's current immutable version, which later changes here don't
+         * touch. No search indexes until searched.
+         */
+        public TaskManager snapshot() {
+            TaskManager copy = new TaskManager();
+            copy.tasks = tasks;
+            return copy;
+        }
+
+        /**
+         * Tasks whose title, description or category contains q, ignoring case. Checks for
+         * interruption as it scans and then throws CancellationException, so a superseded query
+         * running on a worker thread can be abandoned. Results are cached until the next change:
+         * a repeated query is answered from the cache, and one extending a cached query (typing
+         * "inv", then "invo") only rechecks the cached query's results.
+         */
         public List<Task> search(String q) {
             String ql = q.toLowerCase();
+            ensureSearchIndex();
+            // the lock is held only to pick what to scan; the scan itself runs unlocked over
+            // immutable data, so a long search never holds up a write on the EDT
+            SearchSource src = lock.read(() -> {
+                long gen = generation;
+                List<Task> hit = searchCache.get(ql, gen);
+                if (hit != null) return new SearchSource(gen, hit, null);
+                Iterable<Task> scan = searchCache.refine(ql, gen);
+                if (scan == null) {
+                    PersistentOrderedMap<UUID, Task> current = tasks;
+                    List<UUID> candidates = trigrams.candidates(ql);
+                    if (candidates == null) candidates = textIndex.candidates(ql);
+                    scan = current;
+                    if (candidates != null) {
+                        List<Task> narrowed = new ArrayList<>(candidates.size());
+                        for (UUID id : candidates) narrowed.add(current.get(id));
+                        scan = narrowed;
+                    }
+                }
+                return new SearchSource(gen, null, scan);
+            });
+            if (src.cached != null) return new ArrayList<>(src.cached);
             List<Task> out = new ArrayList<>();
-            for (Task t : tasks) {
+            int scanned = 0;
+            for (Task t : src.scan) {
+                if ((++scanned & 4095) == 0 && Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("search cancelled");
+                }
                 if ((t.getTitle() != null && t.getTitle().toLowerCase().contains(ql)) ||
                     (t.getDescription() != null && t.getDescription().toLowerCase().contains(ql)) ||
                     (t.getCategory() != null && t.getCategory().getName().toLowerCase().contains(ql))) {
                     out.add(t);
                 }
             }
+            // cached under the generation it was read at; put ignores it if a write came since
+            searchCache.put(ql, src.generation, out);
+            return out;
+        }
+
+        // what search() scans, picked under the read lock: a cached result, or tasks of one version
+        private static final class SearchSource {
+            final long generation;
+            final List<Task> cached;
+            final Iterable<Task> scan;
+
+            SearchSource(long generation, List<Task> cached, Iterable<Task> scan) {
+                this.generation = generation;
+                this.cached = cached;
+                this.scan = scan;
+            }
+        }
+
+        private static SearchCache<Task> newSearchCache() {
+            return new SearchCache<>(SEARCH_CACHE_ENTRIES, SEARCH_CACHE_TASKS);
+        }
+
+        // Builds the search indexes from one version of the tasks outside the lock, so the display
+        // and writes on the EDT don't wait for it. Writes made meanwhile are queued in indexBacklog
+        // and replayed under a short write lock before the indexes are published. Interruption
+        // abandons the build like a search (CancellationException).
+        private void ensureSearchIndex() {
+            if (textIndex != null) return;
+            synchronized (indexBuild) {
+                if (textIndex != null) return;
+                PersistentOrderedMap<UUID, Task> from;
+                long stamp = lock.writeLock();
+                try {
+                    from = tasks;
+                    indexBacklog = new ArrayList<>();
+                } finally {
+                    unlockWrite(stamp);
+                }
+                TextIndex<UUID> words = new TextIndex<>();
+                TrigramIndex<UUID> grams = new TrigramIndex<>();
+                boolean published = false;
+                try {
+                    int indexed = 0;
+                    for (Task t : from) {
+                        if ((++indexed & 4095) == 0 && Thread.currentThread().isInterrupted()) {
+                            throw new CancellationException("search cancelled");
+                        }
+                        index(words, grams, t);
+                    }
+                    stamp = lock.writeLock();
+                    try {
+                        for (Map.Entry<UUID, Task> e : indexBacklog) {
+                            if (e.getKey() == null) {
+                                words = new TextIndex<>();
+                                grams = new TrigramIndex<>();
+                            } else if (e.getValue() == null) {
+                                words.remove(e.getKey());
+                                grams.remove(e.getKey());
+                            } else {
+                                index(words, grams, e.getValue());
+                            }
+                        }
+                        indexBacklog = null;
+                        trigrams = grams;
+                        textIndex = words;
+                        published = true;
+                    } finally {
+                        unlockWrite(stamp);
+                    }
+                } finally {
+                    if (!published) {
+                        stamp = lock.writeLock();
+                        indexBacklog = null;
+                        unlockWrite(stamp);
+                    }
+                }
+            }
+        }
+
+        // ---- due-date views; only the days in range are visited ----
+
+        /** Tasks due between from and to, both inclusive, in {@link #DUE_VIEW_ORDER}. */
+        public List<Task> dueBetween(LocalDate from, LocalDate to) {
+            ensureDueIndex();
+            return lock.read(() -> dueView(dueIndex.between(from, to)));
+        }
+
+        /** Incomplete tasks due before asOf. */
+        public List<Task> overdue(LocalDate asOf) {
+            ensureDueIndex();
+            return lock.read(() -> {
+                List<Task> out = dueView(dueIndex.before(asOf));
+                out.removeIf(Task::isCompleted);
+                return out;
+            });
+        }
+
+        /** Tasks due from today through {@code days} days from now; dueWithin(0) is "due today". */
+        public List<Task> dueWithin(int days) {
+            LocalDate today = LocalDate.now();
+            return dueBetween(today, today.plusDays(days));
+        }
+
+        private void ensureDueIndex() {
+            if (dueIndex != null) return;
+            long stamp = lock.writeLock();
+            try {
+                if (dueIndex == null) {
+                    dueIndex = new DueIndex<>();
+                    for (Task t : tasks) dueIndex.put(t.getId(), t.getDueDate());
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        private List<Task> dueView(List<UUID> ids) {
+            PersistentOrderedMap<UUID, Task> current = tasks;
+            List<Task> out = new ArrayList<>(ids.size());
+            for (UUID id : ids) out.add(current.get(id));
+            out.sort(DUE_VIEW_ORDER);
             return out;
         }
 
-        // persistence helpers
+        private void index(Task t) {
+            if (dueIndex != null) dueIndex.put(t.getId(), t.getDueDate());
+            if (indexBacklog != null) indexBacklog.add(new AbstractMap.SimpleEntry<>(t.getId(), t));
+            if (textIndex != null) index(textIndex, trigrams, t);
+        }
+
+        private static void index(TextIndex<UUID> words, TrigramIndex<UUID> grams, Task t) {
+            String cat = t.getCategory() != null ? t.getCategory().getName() : null;
+            words.put(t.getId(), t.getTitle(), t.getDescription(), cat);
+            grams.put(t.getId(), t.getTitle(), t.getDescription(), cat);
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            ObjectOutputStream.PutField fields = out.putFields();
+            fields.put("tasks", getTasks());
+            out.writeFields();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            List<Task> stored = (List<Task>) in.readFields().get("tasks", null);
+            lock = new ReadMostlyLock();
+            indexBuild = new Object();
+            events = new ArrayList<>();
+            bulkEvents = -1;
+            searchCache = newSearchCache();
+            categoryPool = new ConcurrentHashMap<>();
+            PersistentOrderedMap.Builder<UUID, Task> loaded = new PersistentOrderedMap.Builder<>();
+            if (stored != null) for (Task t : stored) {
+                internCategory(t);
+                loaded.put(t.getId(), t);
+            }
+            tasks = loaded.build();
+        }
+
+        // persistence helpers: compact binary format (see BinaryFormat); old .ser files still load
         public void saveToFile(File f) throws IOException {
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(f))) {
-                oos.writeObject(this);
+            PersistentOrderedMap<UUID, Task> current = tasks;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16))) {
+                BinaryFormat.writeHeader(out);
+                out.writeInt(current.size());
+                for (Task t : current) writeTask(out, t);
             }
         }
         public static TaskManager loadFromFile(File f) throws IOException, ClassNotFoundException {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(f))) {
-                Object o = ois.readObject();
-                if (o instanceof TaskManager) return (TaskManager) o;
-                else throw new IOException("Invalid data");
+            return loadFromFile(f, chunk -> {});
+        }
+
+        /** Loads f, passing decoded tasks to {@code onChunk} in batches of {@link #LOAD_CHUNK} as they are read. */
+        public static TaskManager loadFromFile(File f, Consumer<List<Task>> onChunk) throws IOException, ClassNotFoundException {
+            try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(f), 1 << 16)) {
+                if (BinaryFormat.isJavaSerialized(in)) {
+                    Object o = new ObjectInputStream(in).readObject();
+                    if (!(o instanceof TaskManager)) throw new IOException("Invalid data");
+                    TaskManager m = (TaskManager) o;
+                    List<Task> all = m.getTasks();
+                    for (int i = 0; i < all.size(); i += LOAD_CHUNK) {
+                        onChunk.accept(new ArrayList<>(all.subList(i, Math.min(all.size(), i + LOAD_CHUNK))));
+                    }
+                    return m;
+                }
+                DataInputStream din = new DataInputStream(in);
+                BinaryFormat.readHeader(din);
+                TaskManager m = new TaskManager();
+                Map<String, Category> categories = new ConcurrentHashMap<>();
+                PersistentOrderedMap.Builder<UUID, Task> loaded = new PersistentOrderedMap.Builder<>();
+                List<Task> chunk = new ArrayList<>(LOAD_CHUNK);
+                for (int i = din.readInt(); i > 0; i--) {
+                    Task t = readTask(din, categories);
+                    loaded.put(t.getId(), t);
+                    chunk.add(t);
+                    if (chunk.size() == LOAD_CHUNK) {
+                        onChunk.accept(chunk);
+                        chunk = new ArrayList<>(LOAD_CHUNK);
+                    }
+                }
+                if (!chunk.isEmpty()) onChunk.accept(chunk);
+                m.tasks = loaded.build();
+                m.categoryPool = categories;
+                return m;
+            }
+        }
+
+        /**
+         * Loads the live records of store in the order their tasks were added (see
+         * {@link TaskStore#liveSlots}), passing decoded tasks to {@code onChunk} in batches of
+         * {@link #LOAD_CHUNK} as they are read.
+         */
+        public static TaskManager loadFromStore(TaskStore store, Consumer<List<Task>> onChunk) {
+            Map<String, Category> categories = new ConcurrentHashMap<>();
+            TaskStore.Decoder<Task> decoder = (id, title, description, category, priority, due, created, completed) ->
+                    new Task(id, title, description,
+                            category != null ? categories.computeIfAbsent(category, Category::new) : null,
+                            Priority.values()[priority], due, created, completed);
+            PersistentOrderedMap.Builder<UUID, Task> loaded = new PersistentOrderedMap.Builder<>();
+            List<Task> chunk = new ArrayList<>(LOAD_CHUNK);
+            for (int slot : store.liveSlots()) {
+                Task t = store.read(slot, decoder);
+                loaded.put(t.getId(), t);
+                chunk.add(t);
+                if (chunk.size() == LOAD_CHUNK) {
+                    onChunk.accept(chunk);
+                    chunk = new ArrayList<>(LOAD_CHUNK);
+                }
+            }
+            if (!chunk.isEmpty()) onChunk.accept(chunk);
+            TaskManager m = new TaskManager();
+            m.tasks = loaded.build();
+            m.categoryPool = categories;
+            return m;
+        }
+
+        /**
+         * Brings store in line with this manager's tasks; the caller forces it. since is a version
+         * the store is known to hold (e.g. the last one written), or null: stored tasks are never
+         * modified, so a task that is still the same instance as in since is skipped, and only
+         * changes are written. Tasks new since then are allocated in this manager's order, so
+         * {@link TaskStore#liveSlots} keeps it. Without since every task is rewritten and moved
+         * into this manager's order, and records of other ids are deleted.
+         */
+        void writeTo(TaskStore store, TaskManager since) throws IOException {
+            PersistentOrderedMap<UUID, Task> current = tasks;
+            if (since != null) {
+                for (Task old : since.tasks) {
+                    int slot = current.containsKey(old.getId()) ? -1 : store.slotOf(old.getId());
+                    if (slot >= 0) store.delete(slot);
+                }
+            } else {
+                for (int slot = 0; slot < store.slotCount(); slot++) {
+                    if (store.isLive(slot) && !current.containsKey(store.id(slot))) store.delete(slot);
+                }
+            }
+            for (Task t : current) {
+                if (since != null && since.tasks.get(t.getId()) == t) continue;
+                int slot = store.slotOf(t.getId());
+                if (slot < 0) slot = store.allocate(t.getId());
+                else if (since == null) store.moveToEnd(slot);
+                store.write(slot, t.getTitle(), t.getDescription(),
+                        t.getCategory() != null ? t.getCategory().getName() : null,
+                        t.getPriority().ordinal(), t.getDueDate(), t.getCreatedAt(), t.isCompleted());
+            }
+        }
+
+        static void writeTask(DataOutput out, Task t) throws IOException {
+            int flags = t.getPriority().ordinal();
+            if (t.isCompleted()) flags |= BinaryFormat.F_COMPLETED;
+            if (t.getDueDate() != null) flags |= BinaryFormat.F_DUE;
+            if (t.getTitle() != null) flags |= BinaryFormat.F_TITLE;
+            if (t.getDescription() != null) flags |= BinaryFormat.F_DESCRIPTION;
+            if (t.getCategory() != null && t.getCategory().getName() != null) flags |= BinaryFormat.F_CATEGORY;
+            BinaryFormat.writeUuid(out, t.getId());
+            out.writeByte(flags);
+            if (t.getDueDate() != null) out.writeInt(BinaryFormat.toEpochDay(t.getDueDate()));
+            out.writeLong(BinaryFormat.toEpochMilli(t.getCreatedAt()));
+            if (t.getTitle() != null) BinaryFormat.writeString(out, t.getTitle());
+            if (t.getDescription() != null) BinaryFormat.writeString(out, t.getDescription());
+            if ((flags & BinaryFormat.F_CATEGORY) != 0) BinaryFormat.writeString(out, t.getCategory().getName());
+        }
+
+        /** Reads one task record; categories with the same name share one instance via {@code categories}. */
+        static Task readTask(DataInput in, Map<String, Category> categories) throws IOException {
+            UUID id = BinaryFormat.readUuid(in);
+            int flags = in.readUnsignedByte();
+            LocalDate due = (flags & BinaryFormat.F_DUE) != 0 ? LocalDate.ofEpochDay(in.readInt()) : null;
+            LocalDateTime created = BinaryFormat.fromEpochMilli(in.readLong());
+            String title = (flags & BinaryFormat.F_TITLE) != 0 ? BinaryFormat.readString(in) : null;
+            String desc = (flags & BinaryFormat.F_DESCRIPTION) != 0 ? BinaryFormat.readString(in) : null;
+            Category cat = (flags & BinaryFormat.F_CATEGORY) != 0
+                    ? categories.computeIfAbsent(BinaryFormat.readString(in), Category::new) : null;
+            return new Task(id, title, desc, cat, Priority.values()[flags & BinaryFormat.PRIORITY_MASK],
+                    due, created, (flags & BinaryFormat.F_COMPLETED) != 0);
+        }
+    }
+
+    /**
+     * Positions of tasks in the list display order: incomplete tasks, then completed ones,
+     * each in insertion order. Tasks sit in append-only slots (insertion order); two Fenwick
+     * trees count the incomplete and completed slots, so finding a task's row, the task at a
+     * row, and moving a task between the two sections are all O(log n). Removed slots are
+     * compacted away when the slot array fills up.
+     */
+    static class DisplayOrder {
+        static final class Node {
+            Task task;
+            boolean completed;
+            int slot;
+            Node(Task task) { this.task = task; this.completed = task.isCompleted(); }
+        }
+
+        private Node[] slots = new Node[16];
+        private int[] open = new int[17], done = new int[17]; // 1-based Fenwick trees over slots
+        private int used, openCount, doneCount;
+
+        int size() { return openCount + doneCount; }
+
+        void add(Node n) {
+            if (used == slots.length) rebuild();
+            n.slot = used++;
+            slots[n.slot] = n;
+            count(n.completed, n.slot, 1);
+        }
+
+        void remove(Node n) {
+            count(n.completed, n.slot, -1);
+            slots[n.slot] = null;
+        }
+
+        void setCompleted(Node n, boolean completed) {
+            count(n.completed, n.slot, -1);
+            n.completed = completed;
+            count(completed, n.slot, 1);
+        }
+
+        int indexOf(Node n) {
+            return n.completed ? openCount + prefix(done, n.slot) : prefix(open, n.slot);
+        }
+
+        Task get(int index) {
+            if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+            return index < openCount ? slots[find(open, index)].task : slots[find(done, index - openCount)].task;
+        }
+
+        private void count(boolean completed, int slot, int delta) {
+            int[] tree = completed ? done : open;
+            for (int i = slot + 1; i < tree.length; i += i & -i) tree[i] += delta;
+            if (completed) doneCount += delta;
+            else openCount += delta;
+        }
+
+        // number of counted slots before slot
+        private static int prefix(int[] tree, int slot) {
+            int sum = 0;
+            for (int i = slot; i > 0; i -= i & -i) sum += tree[i];
+            return sum;
+        }
+
+        // slot holding the k-th (0-based) counted entry
+        private static int find(int[] tree, int k) {
+            int pos = 0, rem = k + 1;
+            for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+                int next = pos + step;
+                if (next < tree.length && tree[next] < rem) {
+                    pos = next;
+                    rem -= tree[next];
+                }
+            }
+            return pos;
+        }
+
+        // drops removed slots, doubling capacity if still more than half full, and rebuilds both trees in O(n)
+        private void rebuild() {
+            int live = size();
+            Node[] next = new Node[live * 2 > slots.length ? slots.length * 2 : slots.length];
+            int j = 0;
+            for (int i = 0; i < used; i++) {
+                if (slots[i] != null) {
+                    slots[i].slot = j;
+                    next[j++] = slots[i];
+                }
+            }
+            slots = next;
+            used = j;
+            open = new int[slots.length + 1];
+            done = new int[slots.length + 1];
+            for (int i = 0; i < used; i++) (slots[i].completed ? done : open)[i + 1] = 1;
+            for (int[] tree : new int[][] { open, done }) {
+                for (int i = 1; i < tree.length; i++) {
+                    int parent = i + (i & -i);
+                    if (parent < tree.length) tree[parent] += tree[i];
+                }
             }
         }
     }
 
+    /**
+     * JList model that reads rows straight from the manager's display order and forwards
+     * only the rows that changed. It can temporarily show an explicit list instead (search
+     * results, tasks streamed in while loading).
+     */
+    static class TaskListModel extends AbstractListModel<Task> implements TaskManager.DisplayListener {
+        private static final long serialVersionUID = 1L;
+        private TaskManager manager;
+        private List<Task> shown; // null: the manager's display order
+
+        TaskListModel(TaskManager manager) { setManager(manager); }
+
+        void setManager(TaskManager m) {
+            int old = getSize();
+            if (manager != null) manager.setDisplayListener(null);
+            manager = m;
+            manager.setDisplayListener(this);
+            shown = null;
+            replaced(old);
+        }
+
+        /** Shows tasks instead of the manager's list until {@link #showAll()}. */
+        void show(List<Task> tasks) {
+            int old = getSize();
+            shown = tasks;
+            replaced(old);
+        }
+
+        void showAll() {
+            if (shown == null) return;
+            int old = getSize();
+            shown = null;
+            replaced(old);
+        }
+
+        /** Inserts into the list passed to {@link #show}. */
+        void addAll(int index, Collection<Task> tasks) {
+            if (tasks.isEmpty()) return;
+            shown.addAll(index, tasks);
+            fireIntervalAdded(this, index, index + tasks.size() - 1);
+        }
+
+        @Override
+        public int getSize() {
+            if (shown != null) return shown.size();
+            return manager != null ? manager.displaySize() : 0;
+        }
+
+        @Override
+        public Task getElementAt(int index) {
+            return shown != null ? shown.get(index) : manager.displayAt(index);
+        }
+
+        @Override
+        public void taskInserted(int index) { if (shown == null) fireIntervalAdded(this, index, index); }
+
+        @Override
+        public void taskRemoved(int index) { if (shown == null) fireIntervalRemoved(this, index, index); }
+
+        @Override
+        public void taskChanged(int index) { if (shown == null) fireContentsChanged(this, index, index); }
+
+        @Override
+        public void displayCleared(int oldSize) {
+            if (shown == null && oldSize > 0) fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+
+        @Override
+        public void displayReplaced(int oldSize) { if (shown == null) replaced(oldSize); }
+
+        private void replaced(int oldSize) {
+            if (oldSize > 0) fireIntervalRemoved(this, 0, oldSize - 1);
+            int size = getSize();
+            if (size > 0) fireIntervalAdded(this, 0, size - 1);
+        }
+    }
+
+    // ---------- Write-ahead journal: one record per mutation ----------
+
+    /**
+     * Append-only log kept next to the store files, as {@code base.journal}. Each
+     * add/edit/delete/toggle appends just the changed task, so an edit costs the same
+     * on a 10-task list as on a 100k-task one. The store is brought up to date (checkpointed) only every
+     * {@link PersistenceWorker#CHECKPOINT_EVERY} records, on explicit Save and on exit.
+     * Appends are buffered until {@link #flush()}, which forces them to disk; the worker
+     * flushes once per coalesced burst, so a burst of edits costs one fsync.
+     */
+    static class TaskJournal implements Closeable {
+        // OP_PUT records hold a Java-serialized Task and are only read (journals from older versions)
+        private static final int OP_PUT = 1, OP_REMOVE = 2, OP_CLEAR = 3, OP_PUT_BINARY = 4;
+
+        private final File file;
+        private FileOutputStream fileOut;
+        private DataOutputStream out; // buffers fileOut
+        private long opened; // file length when out was opened
+        private long durable; // file length as of the last successful flush
+
+        TaskJournal(File base) { this.file = new File(base.getPath() + ".journal"); }
+
+        /**
+         * Moves the journal an earlier version kept at {@code legacy} (next to its snapshot file) to
+         * this journal's file. Call before the first replay; does nothing once it has been moved.
+         */
+        public void adoptLegacy(File legacy) throws IOException {
+            if (!legacy.exists()) return;
+            if (file.exists()) throw new IOException("Both " + legacy + " and " + file + " exist");
+            Files.move(legacy.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public void put(Task t) throws IOException {
+            // refuse an unstorable due date before the op byte, so no torn record is left behind
+            if (t.getDueDate() != null) BinaryFormat.toEpochDay(t.getDueDate());
+            DataOutputStream o = stream();
+            o.writeByte(OP_PUT_BINARY);
+            TaskManager.writeTask(o, t);
+        }
+
+        public void remove(UUID id) throws IOException {
+            DataOutputStream o = stream();
+            o.writeByte(OP_REMOVE);
+            o.writeLong(id.getMostSignificantBits());
+            o.writeLong(id.getLeastSignificantBits());
+        }
+
+        public void clear() throws IOException {
+            stream().writeByte(OP_CLEAR);
+        }
+
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+                fileOut.getChannel().force(false);
+                durable = opened + out.size();
+            }
+        }
+
+        /**
+         * After a failed append or flush: drops the stream and cuts the file back to its length
+         * at the last successful flush, so a record written only in part cannot end up in front
+         * of later ones (replay stops at the first torn record).
+         */
+        public void discardUnflushed() throws IOException {
+            if (out == null) return;
+            try { out.close(); } catch (IOException ignored) { /* truncated below */ }
+            out = null;
+            fileOut = null;
+            try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+                if (f.length() > durable) f.setLength(durable);
+            }
+        }
+
+        /**
+         * Re-applies logged mutations on top of a freshly loaded snapshot.
+         * A torn record at the tail (crash mid-append) ends the replay.
+         * Returns the number of records applied.
+         */
+        public int replay(TaskManager m) throws IOException, ClassNotFoundException {
+            if (!file.exists()) return 0;
+            int n = 0;
+            Map<String, Category> categories = new HashMap<>();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                int op;
+                while ((op = in.read()) != -1) {
+                    if (op == OP_PUT) {
+                        byte[] data = new byte[in.readInt()];
+                        in.readFully(data);
+                        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                            m.putTask((Task) ois.readObject());
+                        }
+                    } else if (op == OP_PUT_BINARY) {
+                        m.putTask(TaskManager.readTask(in, categories));
+                    } else if (op == OP_REMOVE) {
+                        m.removeTask(new UUID(in.readLong(), in.readLong()));
+                    } else if (op == OP_CLEAR) {
+                        m.clearAllTasks();
+                    } else {
+                        break;
+                    }
+                    n++;
+                }
+            } catch (EOFException torn) { /* incomplete last record: ignore it */ }
+            return n;
+        }
+
+        /** Drops all records; call once the store reflects them. */
+        public void reset() throws IOException {
+            close();
+            if (file.exists() && !file.delete()) throw new IOException("Cannot truncate " + file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out != null) { out.close(); out = null; fileOut = null; }
+        }
+
+        private DataOutputStream stream() throws IOException {
+            if (out == null) {
+                opened = durable = file.length();
+                fileOut = new FileOutputStream(file, true);
+                out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            }
+            return out;
+        }
+    }
+
+    // ---------- Background persistence: coalesced journal appends and checkpoints ----------
+
+    /**
+     * Moves all disk I/O off the Event Dispatch Thread. Mutations and checkpoints are
+     * queued in order; the worker waits {@code windowMillis} after the first one, then
+     * writes the whole burst at once: records before the last checkpoint in the burst are
+     * journaled, the checkpoint is written into the {@link TaskStore}, and the remaining
+     * records are journaled with a single flush.
+     *
+     * A checkpoint updates the store in place, writing only the tasks changed since the
+     * last one, so a crash part way leaves a mix of old and new records. Until the store is
+     * forced the journal keeps every record since the previous checkpoint, and replaying it
+     * over that mix gives the checkpoint's tasks again.
+     *
+     * Enqueue methods are called on the EDT; queued tasks are copies, so the UI can keep
+     * editing while the worker writes. Failures are passed to {@code onError} on the EDT;
+     * whatever a failed write did not get to disk is retried ahead of the next one.
+     */
+    static class PersistenceWorker {
+        static final int CHECKPOINT_EVERY = 500;
+
+        private static final class Op {
+            final List<Task> puts; final List<UUID> removes; final boolean clear; final TaskManager checkpoint;
+            Op(List<Task> puts, List<UUID> removes, boolean clear, TaskManager checkpoint) {
+                this.puts = puts; this.removes = removes; this.clear = clear; this.checkpoint = checkpoint;
+            }
+        }
+
+        private final File storeBase;
+        private final File legacySnapshot; // todo_data.ser of earlier versions, deleted once the store holds it all
+        private final TaskJournal journal;
+        private final long windowMillis;
+        private final Consumer<Exception> onError;
+        private final ConcurrentLinkedQueue<Op> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final ScheduledExecutorService exec =
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread th = new Thread(r, "todo-persistence");
+                    th.setDaemon(true);
+                    return th;
+                });
+        private int sinceCheckpoint; // EDT only
+        // worker thread only: the store, opened on the first checkpoint, and the version it
+        // holds (null if unknown, e.g. after a failed write: the next checkpoint rewrites it all)
+        private TaskStore store;
+        private TaskManager stored;
+        private List<Op> unwritten = new ArrayList<>(); // worker thread only: left over by a failed drain, retried first
+
+        PersistenceWorker(File storeBase, File legacySnapshot, TaskJournal journal, long windowMillis,
+                          Consumer<Exception> onError) {
+            this.storeBase = storeBase;
+            this.legacySnapshot = legacySnapshot;
+            this.journal = journal;
+            this.windowMillis = windowMillis;
+            this.onError = onError;
+        }
+
+        public void put(Task t) { enqueue(new Op(List.of(t.copy()), List.of(), false, null), 1); }
+        public void remove(UUID id) { enqueue(new Op(List.of(), List.of(id), false, null), 1); }
+        public void clear() { enqueue(new Op(List.of(), List.of(), true, null), 1); }
+
+        /** Queues a bulk write's tasks as one entry; they are journaled together with one flush. */
+        public void putAll(Collection<Task> ts) {
+            List<Task> copies = new ArrayList<>(ts.size());
+            for (Task t : ts) copies.add(t.copy());
+            if (!copies.isEmpty()) enqueue(new Op(copies, List.of(), false, null), copies.size());
+        }
+
+        public void removeAll(Collection<UUID> ids) {
+            if (!ids.isEmpty()) enqueue(new Op(List.of(), new ArrayList<>(ids), false, null), ids.size());
+        }
+
+        /** Records that the store already holds snapshot (it was just loaded from it), so checkpoints only write changes. */
+        public void storeHolds(TaskManager snapshot) {
+            exec.execute(() -> stored = snapshot);
+        }
+
+        /** Queues a checkpoint of snapshot into the store; pass {@link TaskManager#snapshot()}. */
+        public void checkpoint(TaskManager snapshot) {
+            sinceCheckpoint = 0;
+            pending.add(new Op(null, null, false, snapshot));
+            schedule();
+        }
+
+        public boolean checkpointDue() { return sinceCheckpoint >= CHECKPOINT_EVERY; }
+
+        /** Writes everything queued so far without waiting for the window; completes with false on failure. */
+        public CompletableFuture<Boolean> flush() {
+            return CompletableFuture.supplyAsync(this::drainOrReport, exec);
+        }
+
+        /**
+         * Flushes, then stops the worker; blocks up to {@code timeoutMillis}. A failure is thrown
+         * rather than passed to {@code onError}: the app exits right after, before anything
+         * queued on the EDT would run.
+         */
+        public void close(long timeoutMillis) throws IOException {
+            try {
+                exec.submit(() -> { drain(); return null; }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException ex) {
+                throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+            } catch (TimeoutException ex) {
+                throw new IOException("Writing tasks took longer than " + timeoutMillis + " ms");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing tasks");
+            } finally {
+                exec.execute(this::closeFiles);
+                exec.shutdown();
+            }
+        }
+
+        private void enqueue(Op op, int records) {
+            sinceCheckpoint += records;
+            pending.add(op);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                exec.schedule(this::drainOrReport, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private boolean drainOrReport() {
+            try {
+                drain();
+                return true;
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    sinceCheckpoint = CHECKPOINT_EVERY; // and checkpoint on the next edit, which also resets the journal
+                    onError.accept(ex);
+                });
+                return false;
+            }
+        }
+
+        // worker thread only
+        private void drain() throws IOException {
+            scheduled.set(false);
+            List<Op> batch = unwritten;
+            unwritten = new ArrayList<>();
+            for (Op op; (op = pending.poll()) != null; ) batch.add(op);
+            if (batch.isEmpty()) return;
+            int last = batch.size() - 1;
+            while (last >= 0 && batch.get(last).checkpoint == null) last--;
+            int written = 0; // ops before this index are on disk
+            try {
+                if (last >= 0) {
+                    for (Op op : batch.subList(0, last)) journal(op);
+                    journal.flush();
+                    written = last;
+                    writeCheckpoint(batch.get(last).checkpoint);
+                    written = last + 1;
+                }
+                for (Op op : batch.subList(last + 1, batch.size())) journal(op);
+                journal.flush();
+            } catch (IOException ex) {
+                // keep the rest for the next drain, and cut whatever part of it got into the journal
+                unwritten = new ArrayList<>(batch.subList(written, batch.size()));
+                try { journal.discardUnflushed(); } catch (IOException e) { ex.addSuppressed(e); }
+                throw ex;
+            }
+        }
+
+        private void journal(Op op) throws IOException {
+            if (op.checkpoint != null) return;
+            for (Task t : op.puts) journal.put(t);
+            for (UUID id : op.removes) journal.remove(id);
+            if (op.clear) journal.clear();
+        }
+
+        private void writeCheckpoint(TaskManager snapshot) throws IOException {
+            if (store == null) store = TaskStore.open(storeBase);
+            TaskManager since = stored;
+            stored = null;
+            try {
+                snapshot.writeTo(store, since);
+                store.force();
+            } catch (IOException ex) {
+                // e.g. a compaction that failed part way: reopening the files is what recovers it
+                try { store.close(); } catch (IOException e) { ex.addSuppressed(e); }
+                store = null;
+                throw ex;
+            }
+            stored = snapshot;
+            // the old snapshot goes first: with it gone, startup reads the store and the journal
+            Files.deleteIfExists(legacySnapshot.toPath());
+            // and an old journal that could not be moved is no newer than the store now
+            Files.deleteIfExists(legacyJournal(legacySnapshot).toPath());
+            journal.reset();
+        }
+
+        /** Where versions before the journal moved next to the store kept it: next to {@code legacySnapshot}. */
+        static File legacyJournal(File legacySnapshot) { return new File(legacySnapshot.getPath() + ".journal"); }
+
+        private void closeFiles() {
+            try { journal.close(); } catch (IOException ignored) {}
+            try { if (store != null) store.close(); } catch (IOException ignored) {}
+        }
+    }
+
     // ---------- UI helper components: RoundedButton, RoundedPanel ----------
 
     static class RoundedButton extends JButton {
@@ -159,12 +1373,99 @@ public class TodoApp extends JFrame {
         }
     }
 
+    // ---------- Task list cell renderer ----------
+
+    /**
+     * Renders a task as a priority-colored dot plus its title, bold while incomplete.
+     * Dots are pre-rendered once per priority at the screen's scale and fonts are derived
+     * once per list font, so painting a row allocates nothing.
+     */
+    static class TaskCellRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1L;
+        private final Map<Priority, PriorityIcon> icons = new EnumMap<>(Priority.class);
+        private Font baseFont, plainFont, boldFont;
+
+        TaskCellRenderer() {
+            icons.put(Priority.HIGH, new PriorityIcon(new Color(0xE53935)));
+            icons.put(Priority.MEDIUM, new PriorityIcon(new Color(0xFFB300)));
+            icons.put(Priority.LOW, new PriorityIcon(new Color(0x43A047)));
+            setIconTextGap(10);
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            if (value instanceof Task) {
+                Task t = (Task) value;
+                if (list.getFont() != baseFont) {
+                    baseFont = list.getFont();
+                    plainFont = baseFont.deriveFont(Font.PLAIN);
+                    boldFont = baseFont.deriveFont(Font.BOLD);
+                }
+                setText(t.getTitle());
+                setFont(t.isCompleted() ? plainFont : boldFont);
+                setIcon(icons.get(t.getPriority()));
+            }
+            return this;
+        }
+    }
+
+    /** 12x12 colored dot; the bitmap is rendered once per device scale so it stays crisp on HiDPI screens. */
+    static class PriorityIcon implements Icon {
+        private static final int SIZE = 12, DOT = 10;
+        private final Color color;
+        private GraphicsConfiguration config;
+        private BufferedImage image;
+
+        PriorityIcon(Color color) { this.color = color; }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            Graphics2D g2 = (Graphics2D) g;
+            GraphicsConfiguration gc = g2.getDeviceConfiguration();
+            if (gc != config) {
+                config = gc;
+                image = render(gc.getDefaultTransform().getScaleX());
+            }
+            g2.drawImage(image, x, y, SIZE, SIZE, null);
+        }
+
+        private BufferedImage render(double scale) {
+            int px = (int) Math.ceil(SIZE * scale);
+            BufferedImage img = new BufferedImage(px, px, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = img.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.scale(scale, scale);
+            g2.setColor(color);
+            g2.fillOval(0, 0, DOT, DOT);
+            g2.dispose();
+            return img;
+        }
+
+        @Override
+        public int getIconWidth() { return SIZE; }
+
+        @Override
+        public int getIconHeight() { return SIZE; }
+    }
+
     // ---------- Instance fields (GUI + model) ----------
 
     private TaskManager manager = new TaskManager();
-    private DefaultListModel<Task> listModel = new DefaultListModel<>();
+    private TaskListModel listModel = new TaskListModel(manager);
     private JList<Task> taskJList = new JList<>(listModel);
+    private File storeBase = new File(System.getProperty("user.home"), "todo_data"); // TaskStore files
+    // the snapshot file of earlier versions, converted into the store on the first checkpoint
     private File storageFile = new File(System.getProperty("user.home"), "todo_data.ser");
+    private TaskJournal journal = new TaskJournal(storeBase);
+    private PersistenceWorker persistence = new PersistenceWorker(storeBase, storageFile, journal,
+            Long.getLong("todo.saveWindowMs", 250L), this::persistenceFailed);
+
+    // search-as-you-type: restarted on every keystroke, runs the query once typing pauses
+    private final javax.swing.Timer searchDebounce = new javax.swing.Timer(
+            Integer.getInteger("todo.searchDelayMs", 150), e -> startSearch());
+    private SwingWorker<List<Task>, Void> searchWorker; // the query in flight, if any; EDT only
 
     private boolean darkMode = false;
 
@@ -179,14 +1480,20 @@ public class TodoApp extends JFrame {
     private JTextArea detailsArea;
     private JScrollPane listScroll;
     private JTextField searchField;
+    private JComboBox<String> viewCombo; // All tasks / Overdue / Due today / Due this week
+    private List<JComponent> editControls; // disabled until the initial load finishes
+
+    private boolean loaded = false;
+    // set when the saved tasks could not be read nor moved aside: never write over them this session
+    private boolean snapshotBlocked = false;
+    private int loadedIncomplete = 0; // incomplete tasks streamed in so far (they go before completed ones)
 
     // ---------- Constructor ----------
 
     public TodoApp() {
         super("Beautiful TODO List");
-        loadIfExists();
         initComponents();
-        refreshList();
+        loadInBackground();
 
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(900, 560);
@@ -194,7 +1501,17 @@ public class TodoApp extends JFrame {
 
         addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
-            public void windowClosing(java.awt.event.WindowEvent e) { saveTasks(); }
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                if (loaded) saveTasks(); // never overwrite the file with a half-loaded list
+                try {
+                    persistence.close(10_000);
+                } catch (IOException ex) {
+                    System.out.println("Final save failed: " + ex.getMessage());
+                    JOptionPane.showMessageDialog(TodoApp.this,
+                            "Saving tasks failed:\n" + ex.getMessage() + "\n\nRecent changes may be lost.",
+                            "Save Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
         });
     }
 
@@ -216,52 +1533,44 @@ public class TodoApp extends JFrame {
                 BorderFactory.createLineBorder(new Color(220, 220, 225)),
                 BorderFactory.createEmptyBorder(8,10,8,10)));
         searchField.setBackground(new Color(250,250,255));
-        searchField.setToolTipText("Type and press Enter to search (title/description/category)");
+        searchField.setToolTipText("Type to search (title/description/category)");
 
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { }
+        });
+        // Enter searches right away instead of waiting for the debounce
         searchField.addActionListener(e -> {
-            String q = searchField.getText().trim();
-            if (q.isEmpty()) refreshList();
-            else {
-                var results = manager.search(q);
-                listModel.clear();
-                for (Task t : results) listModel.addElement(t);
-            }
+            searchDebounce.stop();
+            startSearch();
+        });
+
+        // date views, answered from the manager's due-date index
+        viewCombo = new JComboBox<>(new String[] { "All tasks", "Overdue", "Due today", "Due this week" });
+        viewCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        viewCombo.addActionListener(e -> {
+            searchField.setText("");
+            refreshList();
         });
 
-        leftSidebar.add(searchField, BorderLayout.NORTH);
+        JPanel sidebarTop = new JPanel(new BorderLayout(0, 8));
+        sidebarTop.setOpaque(false);
+        sidebarTop.setBorder(new EmptyBorder(0, 0, 8, 0));
+        sidebarTop.add(searchField, BorderLayout.NORTH);
+        sidebarTop.add(viewCombo, BorderLayout.SOUTH);
+        leftSidebar.add(sidebarTop, BorderLayout.NORTH);
 
         // Task list
         taskJList.setFont(new Font("Segoe UI", Font.PLAIN, 15));
-        taskJList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        taskJList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
 
         // Renderer: priority colored dot + bold/plain based on completed
-        taskJList.setCellRenderer(new DefaultListCellRenderer() {
-            @Override
-            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
-                                                          boolean isSelected, boolean cellHasFocus) {
-                JLabel lbl = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-                if (value instanceof Task) {
-                    Task t = (Task) value;
-                    lbl.setText("  " + t.getTitle());
-                    Font f = lbl.getFont();
-                    lbl.setFont(t.isCompleted() ? f.deriveFont(Font.PLAIN) : f.deriveFont(Font.BOLD));
-                    Color dotColor;
-                    if (t.getPriority() == Priority.HIGH) dotColor = new Color(0xE53935);
-                    else if (t.getPriority() == Priority.MEDIUM) dotColor = new Color(0xFFB300);
-                    else dotColor = new Color(0x43A047);
-
-                    // icon: small colored circle
-                    BufferedImage img = new BufferedImage(12,12,BufferedImage.TYPE_INT_ARGB);
-                    Graphics2D g2 = img.createGraphics();
-                    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                    g2.setColor(dotColor);
-                    g2.fillOval(0,0,10,10);
-                    g2.dispose();
-                    lbl.setIcon(new ImageIcon(img));
-                }
-                return lbl;
-            }
-        });
+        taskJList.setCellRenderer(new TaskCellRenderer());
 
         listScroll = new JScrollPane(taskJList);
         listScroll.setBorder(BorderFactory.createEmptyBorder());
@@ -279,16 +1588,22 @@ public class TodoApp extends JFrame {
         RoundedButton editBtn = makeButton(" Edit", new Color(0x7E57C2));
         RoundedButton deleteBtn = makeButton(" Delete", new Color(0xEF5350));
         RoundedButton toggleBtn = makeButton("Toggle", new Color(0x8D6E63));
+        RoundedButton priorityBtn = makeButton("Priority", new Color(0x26A69A));
+        RoundedButton categoryBtn = makeButton("Category", new Color(0x5C6BC0));
 
         addHoverEffect(addBtn);
         addHoverEffect(editBtn);
         addHoverEffect(deleteBtn);
         addHoverEffect(toggleBtn);
+        addHoverEffect(priorityBtn);
+        addHoverEffect(categoryBtn);
 
         topBar.add(addBtn);
         topBar.add(editBtn);
         topBar.add(deleteBtn);
         topBar.add(toggleBtn);
+        topBar.add(priorityBtn);
+        topBar.add(categoryBtn);
 
         add(topBar, BorderLayout.NORTH);
 
@@ -333,6 +1648,8 @@ public class TodoApp extends JFrame {
         // --- Selection listener: show details ---
         taskJList.addListSelectionListener(e -> {
             if (e.getValueIsAdjusting()) return;
+            int count = taskJList.getSelectionModel().getSelectedItemsCount();
+            if (count > 1) { detailsArea.setText(count + " tasks selected"); return; }
             Task sel = taskJList.getSelectedValue();
             if (sel == null) { detailsArea.setText(""); return; }
             StringBuilder sb = new StringBuilder();
@@ -348,13 +1665,14 @@ public class TodoApp extends JFrame {
 
         // ---------- Button actions (preserve original behavior) ----------
         addBtn.addActionListener(e -> {
-            TaskDialog d = new TaskDialog(this);
+            TaskDialog d = new TaskDialog(this, manager::category);
             d.setTitle("Add Task");
             d.setTask(new Task("", "", null, Priority.MEDIUM, null));
             d.setVisible(true);
             if (d.isSaved()) {
-                manager.addTask(d.buildTask());
-                saveTasks();
+                Task t = d.buildTask();
+                manager.addTask(t);
+                journalPut(t);
                 refreshList();
             }
         });
@@ -362,39 +1680,78 @@ public class TodoApp extends JFrame {
         editBtn.addActionListener(e -> {
             Task sel = taskJList.getSelectedValue();
             if (sel == null) { JOptionPane.showMessageDialog(this, "Select a task to edit."); return; }
-            TaskDialog d = new TaskDialog(this);
+            if (taskJList.getSelectionModel().getSelectedItemsCount() > 1) {
+                JOptionPane.showMessageDialog(this, "Select a single task to edit.");
+                return;
+            }
+            TaskDialog d = new TaskDialog(this, manager::category);
             d.setTitle("Edit Task");
             d.setTask(sel);
             d.setVisible(true);
             if (d.isSaved()) {
-                d.applyTo(sel);
-                manager.updateTask(sel);
-                saveTasks();
+                // stored tasks are shared with snapshots: edit a copy and replace
+                Task edited = sel.copy();
+                d.applyTo(edited);
+                manager.updateTask(edited);
+                journalPut(edited);
                 refreshList();
             }
         });
 
+        // the actions below work on the whole selection: one bulk write and one journal entry
         deleteBtn.addActionListener(e -> {
-            Task sel = taskJList.getSelectedValue();
-            if (sel == null) { JOptionPane.showMessageDialog(this, "Select a task to delete."); return; }
-            int ok = JOptionPane.showConfirmDialog(this, "Delete this task?", "Confirm", JOptionPane.YES_NO_OPTION);
+            Set<UUID> ids = selectedIds();
+            if (ids.isEmpty()) { JOptionPane.showMessageDialog(this, "Select a task to delete."); return; }
+            String what = ids.size() == 1 ? "this task" : ids.size() + " tasks";
+            int ok = JOptionPane.showConfirmDialog(this, "Delete " + what + "?", "Confirm", JOptionPane.YES_NO_OPTION);
             if (ok == JOptionPane.YES_OPTION) {
-                manager.removeTask(sel.getId());
-                saveTasks();
+                List<Task> removed = manager.removeAll(ids);
+                List<UUID> removedIds = new ArrayList<>(removed.size());
+                for (Task t : removed) removedIds.add(t.getId());
+                journalRemoveAll(removedIds);
                 refreshList();
             }
         });
 
         toggleBtn.addActionListener(e -> {
-            Task sel = taskJList.getSelectedValue();
-            if (sel == null) { JOptionPane.showMessageDialog(this, "Select a task."); return; }
-            sel.toggleCompleted();
-            manager.updateTask(sel);
-            saveTasks();
+            Set<UUID> ids = selectedIds();
+            if (ids.isEmpty()) { JOptionPane.showMessageDialog(this, "Select a task."); return; }
+            journalPutAll(manager.updateAll(ids, Task::toggleCompleted));
+            refreshList();
+        });
+
+        priorityBtn.addActionListener(e -> {
+            Set<UUID> ids = selectedIds();
+            if (ids.isEmpty()) { JOptionPane.showMessageDialog(this, "Select a task."); return; }
+            Priority p = (Priority) JOptionPane.showInputDialog(this, "Priority for " + ids.size() + " task(s):",
+                    "Set Priority", JOptionPane.PLAIN_MESSAGE, null, Priority.values(), Priority.MEDIUM);
+            if (p == null) return;
+            journalPutAll(manager.updateAll(ids, t -> t.setPriority(p)));
+            refreshList();
+        });
+
+        categoryBtn.addActionListener(e -> {
+            Set<UUID> ids = selectedIds();
+            if (ids.isEmpty()) { JOptionPane.showMessageDialog(this, "Select a task."); return; }
+            String name = JOptionPane.showInputDialog(this, "Category for " + ids.size() + " task(s):", "General");
+            if (name == null || name.trim().isEmpty()) return;
+            Category c = manager.category(name.trim());
+            journalPutAll(manager.updateAll(ids, t -> t.setCategory(c)));
             refreshList();
         });
 
-        saveBtn.addActionListener(e -> { saveTasks(); JOptionPane.showMessageDialog(this, "Saved!"); });
+        saveBtn.addActionListener(e -> {
+            if (snapshotBlocked) {
+                JOptionPane.showMessageDialog(this,
+                        "Tasks are not saved this session: the saved file could not be loaded and was left as it is.",
+                        "Not Saved", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            saveTasks();
+            persistence.flush().thenAccept(ok -> {
+                if (ok) SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, "Saved!"));
+            });
+        });
 
         clearBtn.addActionListener(e -> {
             int ok = JOptionPane.showConfirmDialog(this,
@@ -403,13 +1760,16 @@ public class TodoApp extends JFrame {
                     JOptionPane.YES_NO_OPTION);
             if (ok == JOptionPane.YES_OPTION) {
                 manager.clearAllTasks();
-                saveTasks();
+                journalClear();
                 refreshList();
             }
         });
 
         darkBtn.addActionListener(e -> toggleDarkMode());
 
+        editControls = List.of(searchField, viewCombo, addBtn, editBtn, deleteBtn, toggleBtn, priorityBtn, categoryBtn,
+                saveBtn, clearBtn);
+
         // apply colors initially
         applyColors();
     }
@@ -480,34 +1840,212 @@ public class TodoApp extends JFrame {
 
     // ---------- persistence ----------
 
-    private void loadIfExists() {
-        if (storageFile.exists()) {
-            try {
-                manager = TaskManager.loadFromFile(storageFile);
-            } catch (Exception ex) {
-                System.out.println("Load failed: " + ex.getMessage());
-                manager = new TaskManager();
+    /**
+     * Loads the store (or a snapshot left by an earlier version, which is converted on the first
+     * checkpoint) and replays the journal on a background thread while the window is already
+     * showing. Decoded tasks are streamed into the list in chunks; editing is enabled once
+     * everything (including the journal) has been applied. Saved tasks that fail to load are
+     * moved aside and the user told before anything is written in their place; if they can't be
+     * moved, no checkpoint is written at all.
+     */
+    private void loadInBackground() {
+        setEditingEnabled(false);
+        detailsArea.setText("Loading tasks...");
+        listModel.show(new ArrayList<>());
+        new SwingWorker<TaskManager, List<Task>>() {
+            private int replayed;
+            private Exception loadError; // the saved tasks couldn't be read
+            private File setAside; // where it was moved, or null if that failed too
+            private TaskManager inStore; // what the store holds, if the tasks came from it
+
+            @Override
+            protected TaskManager doInBackground() {
+                TaskManager m = new TaskManager();
+                // until the first checkpoint has converted an old snapshot, the store may be partial
+                if (storageFile.exists()) {
+                    try {
+                        m = TaskManager.loadFromFile(storageFile, chunk -> publish(chunk));
+                    } catch (Exception ex) {
+                        System.out.println("Load failed: " + ex.getMessage());
+                        loadError = ex;
+                        setAside = moveAside(storageFile);
+                        m = new TaskManager();
+                    }
+                } else if (TaskStore.exists(storeBase)) {
+                    try (TaskStore store = TaskStore.open(storeBase)) {
+                        m = TaskManager.loadFromStore(store, chunk -> publish(chunk));
+                        inStore = m.snapshot();
+                    } catch (Exception ex) {
+                        System.out.println("Load failed: " + ex.getMessage());
+                        loadError = ex;
+                        setAside = moveAside(new File(storeBase.getPath() + ".tasks"));
+                        if (setAside != null) moveAside(new File(storeBase.getPath() + ".strings"));
+                        m = new TaskManager();
+                    }
+                }
+                try {
+                    journal.adoptLegacy(PersistenceWorker.legacyJournal(storageFile));
+                    replayed = journal.replay(m);
+                } catch (Exception ex) {
+                    System.out.println("Journal replay failed: " + ex.getMessage());
+                }
+                return m;
             }
+
+            @Override
+            protected void process(List<List<Task>> chunks) {
+                for (List<Task> chunk : chunks) appendLoaded(chunk);
+                detailsArea.setText("Loading tasks... " + listModel.getSize() + " loaded");
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    manager = get();
+                } catch (Exception ex) {
+                    System.out.println("Load failed: " + ex.getMessage());
+                    loadError = ex;
+                    manager = new TaskManager();
+                }
+                loaded = true;
+                listModel.setManager(manager);
+                if (inStore != null) persistence.storeHolds(inStore);
+                if (loadError != null) {
+                    snapshotBlocked = setAside == null;
+                    String msg = "Saved tasks could not be loaded:\n" + loadError.getMessage() + "\n\n"
+                            + (setAside != null
+                                ? "The file was moved to " + setAside + " and a new one will be started."
+                                : "It was left as it is and will not be written this session.");
+                    JOptionPane.showMessageDialog(TodoApp.this, msg, "Load Error", JOptionPane.WARNING_MESSAGE);
+                }
+                // fold replayed records into the store so a torn tail is never appended to
+                if (replayed > 0) saveTasks();
+                refreshList();
+                detailsArea.setText("");
+                setEditingEnabled(true);
+            }
+        }.execute();
+    }
+
+    private void appendLoaded(List<Task> chunk) {
+        List<Task> incomplete = new ArrayList<>();
+        List<Task> completed = new ArrayList<>();
+        for (Task t : chunk) {
+            if (t.isCompleted()) completed.add(t);
+            else incomplete.add(t);
         }
+        listModel.addAll(loadedIncomplete, incomplete);
+        loadedIncomplete += incomplete.size();
+        listModel.addAll(listModel.getSize(), completed);
+    }
+
+    private Set<UUID> selectedIds() {
+        Set<UUID> ids = new HashSet<>();
+        for (Task t : taskJList.getSelectedValuesList()) ids.add(t.getId());
+        return ids;
+    }
+
+    private void setEditingEnabled(boolean enabled) {
+        for (JComponent c : editControls) c.setEnabled(enabled);
     }
 
+    /** Checkpoint: queue writing the changes since the last one into the store, which also truncates the journal. */
     private void saveTasks() {
-        try { manager.saveToFile(storageFile); }
-        catch (Exception ex) { System.out.println("Auto-save failed: " + ex.getMessage()); }
+        if (snapshotBlocked) return;
+        persistence.checkpoint(manager.snapshot());
+    }
+
+    /** Renames an unreadable file to a unique name next to it; returns the new file, or null if it stays. */
+    private static File moveAside(File f) {
+        File aside = new File(f.getPath() + ".unreadable-" + System.currentTimeMillis());
+        try {
+            Files.move(f.toPath(), aside.toPath());
+            return aside;
+        } catch (IOException ex) {
+            System.out.println("Could not move " + f + " aside: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private void journalPut(Task t) {
+        persistence.put(t);
+        if (persistence.checkpointDue()) saveTasks();
+    }
+
+    private void journalPutAll(List<Task> ts) {
+        persistence.putAll(ts);
+        if (persistence.checkpointDue()) saveTasks();
+    }
+
+    private void journalRemoveAll(List<UUID> ids) {
+        persistence.removeAll(ids);
+        if (persistence.checkpointDue()) saveTasks();
+    }
+
+    private void journalClear() {
+        persistence.clear();
+        if (persistence.checkpointDue()) saveTasks();
+    }
+
+    private void persistenceFailed(Exception ex) {
+        System.out.println("Auto-save failed: " + ex.getMessage());
+        JOptionPane.showMessageDialog(this, "Saving tasks failed:\n" + ex.getMessage(),
+                "Save Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    // ---------- search-as-you-type ----------
+
+    /**
+     * Runs the search field's query on a worker thread. A query still in flight is cancelled
+     * (its scan stops at the next interruption check) and its result dropped, so only the
+     * latest query ever reaches the list.
+     */
+    private void startSearch() {
+        cancelSearch();
+        String q = searchField.getText().trim();
+        if (q.isEmpty()) {
+            refreshList();
+            return;
+        }
+        TaskManager m = manager;
+        SwingWorker<List<Task>, Void> worker = new SwingWorker<List<Task>, Void>() {
+            @Override
+            protected List<Task> doInBackground() { return m.search(q); }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || searchWorker != this) return;
+                searchWorker = null;
+                try {
+                    listModel.show(get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    System.out.println("Search failed: " + ex.getMessage());
+                }
+            }
+        };
+        searchWorker = worker;
+        worker.execute();
+    }
+
+    // drops the query in flight so its result can no longer replace what the list shows now
+    private void cancelSearch() {
+        if (searchWorker != null) {
+            searchWorker.cancel(true);
+            searchWorker = null;
+        }
     }
 
     // ---------- list refresh (completed tasks moved to bottom) ----------
 
     private void refreshList() {
-        List<Task> incomplete = new ArrayList<>();
-        List<Task> completed = new ArrayList<>();
-        for (Task t : manager.getTasks()) {
-            if (t.isCompleted()) completed.add(t);
-            else incomplete.add(t);
+        cancelSearch();
+        // "All tasks" follows the manager row by row; the date views are re-queried
+        switch (viewCombo.getSelectedIndex()) {
+            case 1: listModel.show(manager.overdue(LocalDate.now())); break;
+            case 2: listModel.show(manager.dueWithin(0)); break;
+            case 3: listModel.show(manager.dueWithin(6)); break;
+            default: listModel.showAll();
         }
-        listModel.clear();
-        for (Task t : incomplete) listModel.addElement(t);
-        for (Task t : completed) listModel.addElement(t);
     }
 
     // ---------- TaskDialog (modal) ----------
@@ -521,9 +2059,11 @@ public class TodoApp extends JFrame {
         private JComboBox<String> categoryCombo;
         private JComboBox<Priority> priorityCombo;
         private JTextField dueField; // format yyyy-MM-dd
+        private final Function<String, Category> categories; // shared instance per name
 
-        public TaskDialog(Frame owner) {
+        public TaskDialog(Frame owner, Function<String, Category> categories) {
             super(owner, true);
+            this.categories = categories;
             setSize(420, 400);
             setLayout(new BorderLayout());
             setLocationRelativeTo(owner);
@@ -540,6 +2080,8 @@ public class TodoApp extends JFrame {
             descArea.setWrapStyleWord(true);
 
             categoryCombo = new JComboBox<>(new String[]{"General", "Work", "Home", "School", "Other"});
+            // editable, since the Category button can give tasks any name
+            categoryCombo.setEditable(true);
             priorityCombo = new JComboBox<>(Priority.values());
             dueField = new JTextField();
             dueField.setToolTipText("yyyy-MM-dd (leave empty if none)");
@@ -552,7 +2094,12 @@ public class TodoApp extends JFrame {
             c.gridx = 1; c.weightx = 1; c.fill = GridBagConstraints.HORIZONTAL;
             form.add(titleField, c);
 
-          
+            c.gridy++;
+            c.gridx = 0; c.fill = GridBagConstraints.NONE;
+            form.add(new JLabel("Category:"), c);
+            c.gridx = 1; c.fill = GridBagConstraints.HORIZONTAL;
+            form.add(categoryCombo, c);
+
             c.gridy++;
             c.gridx = 0; c.fill = GridBagConstraints.NONE;
             form.add(new JLabel("Priority:"), c);
@@ -594,6 +2141,7 @@ public class TodoApp extends JFrame {
             titleField.setText(t.getTitle());
             descArea.setText(t.getDescription());
             String cat = t.getCategory() != null ? t.getCategory().getName() : "General";
+            if (((DefaultComboBoxModel<String>) categoryCombo.getModel()).getIndexOf(cat) < 0) categoryCombo.addItem(cat);
             categoryCombo.setSelectedItem(cat);
             priorityCombo.setSelectedItem(t.getPriority());
             dueField.setText(t.getDueDate() != null ? t.getDueDate().toString() : "");
@@ -604,7 +2152,7 @@ public class TodoApp extends JFrame {
         public Task buildTask() {
             String title = titleField.getText().trim();
             String desc = descArea.getText().trim();
-            String cat = (String) categoryCombo.getSelectedItem();
+            String cat = selectedCategory();
             Priority p = (Priority) priorityCombo.getSelectedItem();
             LocalDate due = null;
             String dueText = dueField.getText().trim();
@@ -612,14 +2160,21 @@ public class TodoApp extends JFrame {
                 try { due = LocalDate.parse(dueText); }
                 catch (Exception ex) { /* ignore parse error, just leave null */ }
             }
-            Task newTask = new Task(title, desc, new Category(cat), p, due);
+            Task newTask = new Task(title, desc, categories.apply(cat), p, due);
             return newTask;
         }
 
+        // the editor's text, which may not have been committed to the selection yet
+        private String selectedCategory() {
+            Object typed = categoryCombo.getEditor().getItem();
+            String name = typed != null ? typed.toString().trim() : "";
+            return name.isEmpty() ? "General" : name;
+        }
+
         public void applyTo(Task t) {
             t.setTitle(titleField.getText().trim());
             t.setDescription(descArea.getText().trim());
-            t.setCategory(new Category((String) categoryCombo.getSelectedItem()));
+            t.setCategory(categories.apply(selectedCategory()));
             t.setPriority((Priority) priorityCombo.getSelectedItem());
             String dueText = dueField.getText().trim();
             if (!dueText.isEmpty()) {
@@ -0,0 +1,72 @@
+import java.util.*;
+
+/**
+ * Index from every 3-character window of the lowercased fields to the keys that contain it.
+ * Unlike {@link TextIndex} it does not split on words, so any substring query of length 3
+ * or more ("invoi", "e-ma", "x 2") is narrowed to the keys holding all of its trigrams.
+ * The result is a superset; callers still confirm it with {@code contains}.
+ */
+public class TrigramIndex<K> {
+
+    private static final class Entry {
+        final long seq;
+        Set<Long> grams = Collections.emptySet();
+        Entry(long seq) { this.seq = seq; }
+    }
+
+    private final Map<Long, Set<K>> postings = new HashMap<>();
+    private final Map<K, Entry> entries = new HashMap<>();
+    private long nextSeq;
+
+    /** Indexes (or re-indexes) the given fields for key; null fields are skipped. */
+    public void put(K key, String... fields) {
+        Set<Long> grams = new HashSet<>();
+        for (String f : fields) if (f != null) addGrams(f.toLowerCase(), grams);
+        Entry e = entries.get(key);
+        if (e == null) { e = new Entry(nextSeq++); entries.put(key, e); }
+        for (Long g : e.grams) if (!grams.contains(g)) unpost(g, key);
+        for (Long g : grams) if (!e.grams.contains(g)) postings.computeIfAbsent(g, x -> new HashSet<>()).add(key);
+        e.grams = grams;
+    }
+
+    public void remove(K key) {
+        Entry e = entries.remove(key);
+        if (e != null) for (Long g : e.grams) unpost(g, key);
+    }
+
+    /**
+     * Keys whose indexed text may contain {@code lowerQuery}, in first-indexed order,
+     * or null when the query is shorter than three characters.
+     */
+    public List<K> candidates(String lowerQuery) {
+        if (lowerQuery.length() < 3) return null;
+        Set<Long> grams = new HashSet<>();
+        addGrams(lowerQuery, grams);
+        List<Set<K>> sets = new ArrayList<>(grams.size());
+        for (Long g : grams) {
+            Set<K> s = postings.get(g);
+            if (s == null) return new ArrayList<>();
+            sets.add(s);
+        }
+        sets.sort(Comparator.comparingInt(Set::size));
+        List<K> out = new ArrayList<>();
+        outer:
+        for (K k : sets.get(0)) {
+            for (int i = 1; i < sets.size(); i++) if (!sets.get(i).contains(k)) continue outer;
+            out.add(k);
+        }
+        out.sort(Comparator.comparingLong(k -> entries.get(k).seq));
+        return out;
+    }
+
+    private static void addGrams(String s, Set<Long> into) {
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            into.add(((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2));
+        }
+    }
+
+    private void unpost(Long g, K key) {
+        Set<K> s = postings.get(g);
+        if (s != null && s.remove(key) && s.isEmpty()) postings.remove(g);
+    }
+}
@@ -1,13 +1,19 @@
 import java.io.Serializable;
 import java.util.Objects;
 
+/**
+ * A task category. Only {@link CategoryRegistry} renames one, in place, and equals and hashCode
+ * follow the name: the registry's instances are kept only in identity-keyed structures, and
+ * TaskManager.getCategories hands out copies.
+ */
 public class Category implements Serializable {
     private static final long serialVersionUID = 1L;
     private String name;
 
     public Category(String name) { this.name = name == null ? "General" : name; }
     public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
+
+    void rename(String name) { this.name = name; }
 
     @Override
     public String toString() { return name; }
@@ -1,6 +1,10 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
 import java.util.UUID;
 
 public class Task implements Serializable, Comparable<Task> {
@@ -15,6 +19,27 @@ public class Task implements Serializable, Comparable<Task> {
     private LocalDateTime createdAt;
     private boolean completed;
 
+    // compareTo order packed into two longs, recomputed whenever priority or dueDate changes.
+    // Every field is biased by its minimum and kept whole, so the keys order exactly as
+    // compareTo does over the full LocalDate/LocalDateTime range:
+    // sortKey      = [2 bits inverted priority][40 bits due epoch-day; all ones = no date]
+    //                [high 22 bits of the 56-bit created epoch second]
+    // sortTiebreak = [low 34 bits of the created epoch second][30 bits created nano-of-second]
+    // each with the sign bit flipped so signed long order works
+    private transient long sortKey;
+    private transient long sortTiebreak;
+
+    private static final long MIN_DAY = LocalDate.MIN.toEpochDay();
+    private static final long NO_DUE = (1L << 40) - 1;
+    private static final long MIN_SECOND = LocalDateTime.MIN.toEpochSecond(ZoneOffset.UTC);
+    private static final long LOW_34 = (1L << 34) - 1;
+
+    /** Sorts by the packed keys, e.g. with {@link java.util.Arrays#parallelSort}; same order as {@link #compareTo}. */
+    public static final Comparator<Task> KEY_ORDER = (a, b) -> {
+        int c = Long.compare(a.sortKey, b.sortKey);
+        return c != 0 ? c : Long.compare(a.sortTiebreak, b.sortTiebreak);
+    };
+
     public Task(String title, String description, Category category, Priority priority, LocalDate dueDate) {
         this.id = UUID.randomUUID();
         this.title = title;
@@ -24,6 +49,26 @@ public class Task implements Serializable, Comparable<Task> {
         this.dueDate = dueDate;
         this.createdAt = LocalDateTime.now();
         this.completed = false;
+        updateSortKey();
+    }
+
+    // Restores a stored task as-is (used by the binary loader)
+    Task(UUID id, String title, String description, Category category, Priority priority,
+         LocalDate dueDate, LocalDateTime createdAt, boolean completed) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.category = category;
+        this.priority = priority;
+        this.dueDate = dueDate;
+        this.createdAt = createdAt;
+        this.completed = completed;
+        updateSortKey();
+    }
+
+    /** Detached field-by-field copy (same id). */
+    public Task copy() {
+        return new Task(id, title, description, category, priority, dueDate, createdAt, completed);
     }
 
     // Getters / Setters
@@ -35,13 +80,28 @@ public class Task implements Serializable, Comparable<Task> {
     public Category getCategory() { return category; }
     public void setCategory(Category category) { this.category = category; }
     public Priority getPriority() { return priority; }
-    public void setPriority(Priority priority) { this.priority = priority; }
+    public void setPriority(Priority priority) { this.priority = priority; updateSortKey(); }
     public LocalDate getDueDate() { return dueDate; }
-    public void setDueDate(LocalDate dueDate) { this.dueDate = dueDate; }
+    public void setDueDate(LocalDate dueDate) { this.dueDate = dueDate; updateSortKey(); }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public boolean isCompleted() { return completed; }
     public void setCompleted(boolean completed) { this.completed = completed; }
     public void toggleCompleted() { this.completed = !this.completed; }
+    public long getSortKey() { return sortKey; }
+    public long getSortTiebreak() { return sortTiebreak; }
+
+    private void updateSortKey() {
+        long prio = Priority.HIGH.ordinal() - priority.ordinal();
+        long due = dueDate == null ? NO_DUE : dueDate.toEpochDay() - MIN_DAY;
+        long created = createdAt.toEpochSecond(ZoneOffset.UTC) - MIN_SECOND;
+        sortKey = ((prio << 62) | (due << 22) | (created >>> 34)) ^ Long.MIN_VALUE;
+        sortTiebreak = (((created & LOW_34) << 30) | createdAt.getNano()) ^ Long.MIN_VALUE;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        updateSortKey();
+    }
 
     @Override
     public String toString() {
@@ -54,16 +114,6 @@ public class Task implements Serializable, Comparable<Task> {
     @Override
     public int compareTo(Task other) {
         // Primary: priority (HIGH first), then dueDate (earlier first), then createdAt
-        int pcmp = other.priority.ordinal() - this.priority.ordinal(); // HIGH=2..LOW=0
-        if (pcmp != 0) return pcmp;
-        if (this.dueDate != null && other.dueDate != null) {
-            int dcmp = this.dueDate.compareTo(other.dueDate);
-            if (dcmp != 0) return dcmp;
-        } else if (this.dueDate != null) {
-            return -1;
-        } else if (other.dueDate != null) {
-            return 1;
-        }
-        return this.createdAt.compareTo(other.createdAt);
+        return KEY_ORDER.compare(this, other);
     }
 }
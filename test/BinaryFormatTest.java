@@ -0,0 +1,208 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Randomized round trips through the compact binary format (see BinaryFormat): both
+ * TaskManagers' saveToFile/loadFromFile, and TodoApp.TaskJournal, whose replay must rebuild the
+ * tasks as of every record boundary. A journal cut anywhere (a crash mid-append) must replay
+ * up to the last whole record and stop there. Created times are stored to the millisecond. A due
+ * date whose epoch day does not fit an int must be refused with an IOException, never wrapped.
+ */
+public class BinaryFormatTest extends RandomizedTest {
+    static final String[] TEXT = {
+        "", "a", "Invoice #12", "caf\u00e9", "stra\u00dfe", "\u0130stanbul", "a\ud83d\ude00b", "\u4e2d\u6587",
+        "line\nbreak", "tab\there", "\u0000nul",
+    };
+
+    public static void main(String[] args) throws Exception {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        File dir = Files.createTempDirectory("binaryformat").toFile();
+        try {
+            for (int round = 0; round < 10; round++) {
+                manager(new File(dir, "manager.dat"), rnd, round);
+                appManager(new File(dir, "app.dat"), rnd, round);
+            }
+            journal(dir, rnd);
+            dueOutOfRange(dir, rnd);
+        } finally {
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+        }
+        System.out.println("BinaryFormatTest: ok (seed " + seed + ")");
+    }
+
+    // now and then longer than the 64 KB a DataOutput.writeUTF string can hold
+    static String text(Random rnd) {
+        if (rnd.nextInt(200) == 0) return "x".repeat(70_000);
+        return TEXT[rnd.nextInt(TEXT.length)] + rnd.nextInt(100);
+    }
+
+    // now and then the first or last day whose epoch day still fits the int a record stores
+    static LocalDate due(Random rnd) {
+        if (rnd.nextInt(100) == 0) return LocalDate.ofEpochDay(rnd.nextBoolean() ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+        return rnd.nextBoolean() ? null : LocalDate.of(1970, 1, 1).plusDays(rnd.nextInt(40_000) - 20_000);
+    }
+
+    static String fields(Task t) {
+        return t.getId() + "|" + t.getTitle() + "|" + t.getDescription() + "|"
+            + (t.getCategory() != null ? t.getCategory().getName() : null) + "|" + t.getPriority() + "|"
+            + t.getDueDate() + "|" + t.getCreatedAt().truncatedTo(ChronoUnit.MILLIS) + "|" + t.isCompleted();
+    }
+
+    static String fields(TodoApp.Task t) {
+        return t.getId() + "|" + t.getTitle() + "|" + t.getDescription() + "|"
+            + (t.getCategory() != null ? t.getCategory().getName() : null) + "|" + t.getPriority() + "|"
+            + t.getDueDate() + "|" + t.getCreatedAt().truncatedTo(ChronoUnit.MILLIS) + "|" + t.isCompleted();
+    }
+
+    static List<String> fieldsOf(TaskManager m) {
+        List<String> out = new ArrayList<>();
+        for (Task t : m.getTasks()) out.add(fields(t));
+        return out;
+    }
+
+    static List<String> fieldsOf(TodoApp.TaskManager m) {
+        List<String> out = new ArrayList<>();
+        for (TodoApp.Task t : m.getTasks()) out.add(fields(t));
+        return out;
+    }
+
+    static Set<String> categoryNames(TaskManager m) {
+        Set<String> out = new HashSet<>();
+        for (Category c : m.getCategories()) out.add(c.getName());
+        return out;
+    }
+
+    static void manager(File f, Random rnd, int round) throws Exception {
+        TaskManager m = new TaskManager();
+        for (int k = rnd.nextInt(300); k > 0; k--) {
+            Task t = new Task(text(rnd), rnd.nextBoolean() ? text(rnd) : null,
+                rnd.nextInt(4) == 0 ? null : new Category(rnd.nextBoolean() ? text(rnd) : "Work"),
+                Priority.values()[rnd.nextInt(3)], due(rnd));
+            t.setCompleted(rnd.nextBoolean());
+            m.addTask(t);
+        }
+        m.saveToFile(f);
+        TaskManager loaded = TaskManager.loadFromFile(f);
+        check(fieldsOf(loaded).equals(fieldsOf(m)), "TaskManager tasks in round " + round);
+        check(categoryNames(loaded).equals(categoryNames(m)), "TaskManager categories in round " + round);
+    }
+
+    static TodoApp.Task appTask(Random rnd) {
+        TodoApp.Task t = new TodoApp.Task(rnd.nextInt(10) == 0 ? null : text(rnd), rnd.nextBoolean() ? text(rnd) : null,
+            rnd.nextInt(4) == 0 ? null : new TodoApp.Category(text(rnd)),
+            TodoApp.Priority.values()[rnd.nextInt(3)], due(rnd));
+        t.setCompleted(rnd.nextBoolean());
+        return t;
+    }
+
+    static void appManager(File f, Random rnd, int round) throws Exception {
+        TodoApp.TaskManager m = new TodoApp.TaskManager();
+        for (int k = rnd.nextInt(3 * TodoApp.TaskManager.LOAD_CHUNK); k > 0; k--) m.addTask(appTask(rnd));
+        m.saveToFile(f);
+        List<TodoApp.Task> chunks = new ArrayList<>();
+        TodoApp.TaskManager loaded = TodoApp.TaskManager.loadFromFile(f, chunks::addAll);
+        check(fieldsOf(loaded).equals(fieldsOf(m)), "TodoApp.TaskManager tasks in round " + round);
+        check(chunks.equals(loaded.getTasks()), "TodoApp.TaskManager chunks in round " + round);
+    }
+
+    static void journal(File dir, Random rnd) throws Exception {
+        File base = new File(dir, "app");
+        File file = new File(base.getPath() + ".journal");
+        TodoApp.TaskJournal journal = new TodoApp.TaskJournal(base);
+        TodoApp.TaskManager m = new TodoApp.TaskManager();
+        // the tasks as of each record boundary (after 0, 1, 2... records), by journal length
+        List<Long> lengths = new ArrayList<>(List.of(0L));
+        List<List<String>> states = new ArrayList<>(List.of(List.of()));
+        for (int op = 0; op < 1500; op++) {
+            List<TodoApp.Task> all = m.getTasks();
+            int r = all.isEmpty() ? 0 : rnd.nextInt(100);
+            if (r < 50) {
+                TodoApp.Task t = appTask(rnd);
+                m.putTask(t);
+                journal.put(t);
+            } else if (r < 75) {
+                TodoApp.Task t = all.get(rnd.nextInt(all.size())).copy();
+                t.setTitle(text(rnd));
+                t.toggleCompleted();
+                m.putTask(t);
+                journal.put(t);
+            } else if (r < 99) {
+                UUID id = all.get(rnd.nextInt(all.size())).getId();
+                m.removeTask(id);
+                journal.remove(id);
+            } else {
+                m.clearAllTasks();
+                journal.clear();
+            }
+            journal.flush();
+            lengths.add(file.length());
+            states.add(fieldsOf(m.snapshot()));
+        }
+        journal.close();
+        TodoApp.TaskManager replayed = new TodoApp.TaskManager();
+        check(new TodoApp.TaskJournal(base).replay(replayed) == 1500, "records replayed");
+        check(fieldsOf(replayed).equals(states.get(states.size() - 1)), "replayed journal");
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        File tornBase = new File(dir, "torn");
+        File torn = new File(tornBase.getPath() + ".journal");
+        for (int k = 0; k < 300; k++) {
+            // cuts at and right around the boundaries, where an off-by-one would show, and anywhere
+            int at = rnd.nextInt(lengths.size());
+            long cut = rnd.nextBoolean() ? lengths.get(at) + rnd.nextInt(3) - 1 : (long) (rnd.nextDouble() * bytes.length);
+            cut = Math.max(0, Math.min(bytes.length, cut));
+            Files.write(torn.toPath(), Arrays.copyOf(bytes, (int) cut));
+            int whole = 0;
+            while (whole + 1 < lengths.size() && lengths.get(whole + 1) <= cut) whole++;
+            TodoApp.TaskManager t = new TodoApp.TaskManager();
+            int n = new TodoApp.TaskJournal(tornBase).replay(t);
+            check(n == whole, "journal cut at " + cut + ": replayed " + n + " records of " + whole);
+            check(fieldsOf(t).equals(states.get(whole)), "journal cut at " + cut + " after record " + whole);
+        }
+    }
+
+    static boolean refused(Callable<?> write) throws Exception {
+        try {
+            write.call();
+            return false;
+        } catch (IOException expected) {
+            return true;
+        }
+    }
+
+    static void dueOutOfRange(File dir, Random rnd) throws Exception {
+        LocalDate[] beyond = {
+            LocalDate.ofEpochDay(Integer.MAX_VALUE + 1L), LocalDate.ofEpochDay(Integer.MIN_VALUE - 1L), LocalDate.MAX, LocalDate.MIN,
+        };
+        for (LocalDate day : beyond) {
+            TaskManager m = new TaskManager();
+            m.addTask(new Task("t", null, null, Priority.LOW, day));
+            check(refused(() -> { m.saveToFile(new File(dir, "manager.dat")); return null; }), "TaskManager saved " + day);
+
+            TodoApp.TaskManager app = new TodoApp.TaskManager();
+            TodoApp.Task t = appTask(rnd);
+            t.setDueDate(day);
+            app.addTask(t);
+            check(refused(() -> { app.saveToFile(new File(dir, "app.dat")); return null; }), "TodoApp.TaskManager saved " + day);
+
+            // the refused put leaves nothing behind, so the records around it replay
+            File base = new File(dir, "range");
+            new File(base.getPath() + ".journal").delete();
+            TodoApp.TaskJournal journal = new TodoApp.TaskJournal(base);
+            TodoApp.Task before = appTask(rnd), after = appTask(rnd);
+            journal.put(before);
+            check(refused(() -> { journal.put(t); return null; }), "journal put " + day);
+            journal.put(after);
+            journal.close();
+            TodoApp.TaskManager replayed = new TodoApp.TaskManager();
+            check(new TodoApp.TaskJournal(base).replay(replayed) == 2, "journal around " + day);
+            check(fieldsOf(replayed).equals(List.of(fields(before), fields(after))), "journal tasks around " + day);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.*;
+
+/**
+ * Randomized checks of CompressedBitmap against java.util.BitSet: adds and removes that move
+ * chunks across the array/bitmap boundary both ways, and and/or/andNot/orAll over sets from
+ * empty through sparse to full chunks, which must leave their operands unchanged.
+ */
+public class CompressedBitmapTest extends RandomizedTest {
+    static final int CHUNK = 1 << 16;
+
+    public static void main(String[] args) {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        churn(rnd);
+        for (int round = 0; round < 80; round++) combinators(rnd, round);
+        edges();
+        System.out.println("CompressedBitmapTest: ok (seed " + seed + ")");
+    }
+
+    // adds and removes in one chunk until it has been through both modes several times
+    static void churn(Random rnd) {
+        CompressedBitmap bits = new CompressedBitmap();
+        BitSet ref = new BitSet();
+        int base = 3 * CHUNK, ops = 0;
+        for (int phase = 0; phase < 8; phase++) {
+            // alternately fill past 4096 values (bitmap mode) and drain below 2048 (array mode)
+            boolean filling = phase % 2 == 0;
+            int target = filling ? 6000 + rnd.nextInt(20_000) : rnd.nextInt(1500);
+            while (filling ? ref.cardinality() < target : ref.cardinality() > target) {
+                boolean add = filling ? rnd.nextInt(5) > 0 : rnd.nextInt(5) == 0;
+                int x = base + rnd.nextInt(CHUNK);
+                if (!filling && !add) {
+                    // remove a member near x, or draining a sparse chunk would take forever
+                    x = ref.nextSetBit(x);
+                    if (x < 0) x = ref.nextSetBit(base);
+                }
+                if (add && bits.add(x) == ref.get(x)) throw new AssertionError("add " + x + " result");
+                if (!add && bits.remove(x) != ref.get(x)) throw new AssertionError("remove " + x + " result");
+                ref.set(x, add);
+                if (++ops % 4096 == 0) same(bits, ref, "churn phase " + phase);
+            }
+            same(bits, ref, "end of churn phase " + phase);
+        }
+        for (int x = ref.nextSetBit(0); x >= 0; x = ref.nextSetBit(x + 1)) {
+            if (!bits.remove(x)) throw new AssertionError("drain " + x);
+        }
+        check(bits.isEmpty() && bits.cardinality() == 0, "empty after removing everything");
+    }
+
+    static void combinators(Random rnd, int round) {
+        BitSet ra = randomSet(rnd), rb = randomSet(rnd);
+        CompressedBitmap a = of(ra), b = of(rb);
+        int[] aBefore = a.toArray(), bBefore = b.toArray();
+        String what = "round " + round;
+
+        BitSet and = (BitSet) ra.clone();
+        and.and(rb);
+        same(a.and(b), and, what + ": and");
+
+        BitSet or = (BitSet) ra.clone();
+        or.or(rb);
+        same(a.or(b), or, what + ": or");
+        same(CompressedBitmap.orAll(List.of(a, b)), or, what + ": orAll");
+
+        BitSet andNot = (BitSet) ra.clone();
+        andNot.andNot(rb);
+        same(a.andNot(b), andNot, what + ": andNot");
+        BitSet notAnd = (BitSet) rb.clone();
+        notAnd.andNot(ra);
+        same(b.andNot(a), notAnd, what + ": andNot reversed");
+
+        check(Arrays.equals(a.toArray(), aBefore) && Arrays.equals(b.toArray(), bBefore), what + ": operands changed");
+
+        // results are independent bitmaps: changing one leaves the operands alone
+        CompressedBitmap u = a.or(b);
+        int x = rnd.nextInt(8 * CHUNK);
+        if (u.contains(x)) u.remove(x);
+        else u.add(x);
+        check(Arrays.equals(a.toArray(), aBefore) && Arrays.equals(b.toArray(), bBefore), what + ": result shares chunks with operands");
+    }
+
+    // chunks 0..7 each empty, sparse, around the 4096 array limit, dense or full
+    static BitSet randomSet(Random rnd) {
+        BitSet s = new BitSet();
+        for (int chunk = 0; chunk < 8; chunk++) {
+            int base = chunk * CHUNK;
+            switch (rnd.nextInt(6)) {
+                case 0: break;
+                case 1: fill(s, rnd, base, 1 + rnd.nextInt(50)); break;
+                case 2: fill(s, rnd, base, 4090 + rnd.nextInt(12)); break;
+                case 3: fill(s, rnd, base, 10_000 + rnd.nextInt(50_000)); break;
+                case 4: s.set(base, base + CHUNK); break;
+                default: s.set(base + rnd.nextInt(1000), base + 1000 + rnd.nextInt(CHUNK - 1000)); break;
+            }
+        }
+        return s;
+    }
+
+    static void fill(BitSet s, Random rnd, int base, int count) {
+        for (int i = 0; i < count; i++) s.set(base + rnd.nextInt(CHUNK));
+    }
+
+    static CompressedBitmap of(BitSet s) {
+        CompressedBitmap b = new CompressedBitmap();
+        s.stream().forEach(b::add);
+        return b;
+    }
+
+    static void edges() {
+        CompressedBitmap b = new CompressedBitmap();
+        check(!b.contains(-1) && !b.remove(-1), "negative values are never members");
+        try {
+            b.add(-1);
+            throw new AssertionError("add(-1) should throw");
+        } catch (IllegalArgumentException expected) { }
+        check(b.add(Integer.MAX_VALUE) && b.contains(Integer.MAX_VALUE) && b.cardinality() == 1, "largest value");
+        check(b.add(0) && b.toArray()[0] == 0 && b.toArray()[1] == Integer.MAX_VALUE, "ascending across far chunks");
+        check(CompressedBitmap.orAll(List.of()).isEmpty(), "orAll of nothing");
+    }
+
+    static void same(CompressedBitmap bits, BitSet ref, String what) {
+        check(bits.cardinality() == ref.cardinality(), what + ": cardinality " + bits.cardinality() + " != " + ref.cardinality());
+        check(bits.isEmpty() == ref.isEmpty(), what + ": isEmpty");
+        check(Arrays.equals(bits.toArray(), ref.stream().toArray()), what + ": values");
+        int[] last = { -1 };
+        bits.forEach(v -> {
+            if (v <= last[0]) throw new AssertionError(what + ": forEach not ascending at " + v);
+            last[0] = v;
+        });
+        // membership right at and around the members, and at chunk edges
+        for (int x = ref.nextSetBit(0); x >= 0; x = ref.nextSetBit(x + 1)) {
+            if (!bits.contains(x)) throw new AssertionError(what + ": contains " + x);
+            if (!ref.get(x + 1) && bits.contains(x + 1)) throw new AssertionError(what + ": contains " + (x + 1));
+        }
+        for (int chunk = 0; chunk <= 8; chunk++) {
+            for (int x : new int[] { chunk * CHUNK, chunk * CHUNK + CHUNK - 1 }) {
+                check(bits.contains(x) == ref.get(x), what + ": contains " + x);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Randomized checks of the list display order (incomplete tasks, then completed ones, each in
+ * insertion order): TodoApp.DisplayOrder on its own against a plain list, then through
+ * TodoApp.TaskManager, whose DisplayListener events must keep a JList-style row count in step
+ * with every kind of write, single and bulk, also for a manager read back by Java serialization.
+ */
+public class DisplayOrderTest extends RandomizedTest {
+    public static void main(String[] args) throws Exception {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        displayOrder(rnd);
+        manager(rnd, new TodoApp.TaskManager());
+        // the legacy todo_data.ser path: a manager read back by Java serialization
+        TodoApp.TaskManager saved = new TodoApp.TaskManager();
+        for (int i = 0; i < 10; i++) saved.addTask(task(rnd, -i));
+        manager(rnd, deserialized(saved));
+        System.out.println("DisplayOrderTest: ok (seed " + seed + ")");
+    }
+
+    static TodoApp.Task task(Random rnd, int i) {
+        TodoApp.Task t = new TodoApp.Task("task " + i, null, null, TodoApp.Priority.MEDIUM, null);
+        t.setCompleted(rnd.nextInt(3) == 0);
+        return t;
+    }
+
+    static void displayOrder(Random rnd) {
+        TodoApp.DisplayOrder order = new TodoApp.DisplayOrder();
+        List<TodoApp.DisplayOrder.Node> live = new ArrayList<>(); // insertion order
+        for (int op = 0; op < 30_000; op++) {
+            // grow, then shrink, then grow again, so slots fill up both with and without doubling
+            int phase = op / 5000 % 3;
+            int r = rnd.nextInt(10);
+            if (live.isEmpty() || r < (phase == 1 ? 2 : 5)) {
+                TodoApp.DisplayOrder.Node n = new TodoApp.DisplayOrder.Node(task(rnd, op));
+                order.add(n);
+                live.add(n);
+            } else if (r < 8) {
+                TodoApp.DisplayOrder.Node n = live.remove(rnd.nextInt(live.size()));
+                order.remove(n);
+            } else {
+                TodoApp.DisplayOrder.Node n = live.get(rnd.nextInt(live.size()));
+                order.setCompleted(n, !n.completed);
+            }
+            check(order.size() == live.size(), "size at op " + op);
+            if (op % 250 == 0) {
+                List<TodoApp.DisplayOrder.Node> expected = displayed(live);
+                for (int i = 0; i < expected.size(); i++) {
+                    TodoApp.DisplayOrder.Node n = expected.get(i);
+                    if (order.get(i) != n.task) throw new AssertionError("get(" + i + ") at op " + op);
+                    if (order.indexOf(n) != i) throw new AssertionError("indexOf row " + i + " at op " + op);
+                }
+                outOfRange(() -> order.get(-1), "get(-1)");
+                outOfRange(() -> order.get(order.size()), "get(size)");
+            }
+        }
+    }
+
+    static List<TodoApp.DisplayOrder.Node> displayed(List<TodoApp.DisplayOrder.Node> live) {
+        List<TodoApp.DisplayOrder.Node> out = new ArrayList<>();
+        for (TodoApp.DisplayOrder.Node n : live) if (!n.completed) out.add(n);
+        for (TodoApp.DisplayOrder.Node n : live) if (n.completed) out.add(n);
+        return out;
+    }
+
+    /** Row count as a JList keeps it from the events, with each event checked against it. */
+    static final class Rows implements TodoApp.TaskManager.DisplayListener {
+        final TodoApp.TaskManager m;
+        int size;
+
+        Rows(TodoApp.TaskManager m) { this.m = m; }
+
+        @Override
+        public void taskInserted(int index) {
+            check(index >= 0 && index <= size, "inserted at " + index + " of " + size);
+            size++;
+        }
+
+        @Override
+        public void taskRemoved(int index) {
+            check(index >= 0 && index < size, "removed at " + index + " of " + size);
+            size--;
+        }
+
+        @Override
+        public void taskChanged(int index) {
+            check(index >= 0 && index < size, "changed at " + index + " of " + size);
+        }
+
+        @Override
+        public void displayCleared(int oldSize) {
+            check(oldSize == size, "cleared " + oldSize + " rows of " + size);
+            size = 0;
+        }
+
+        @Override
+        public void displayReplaced(int oldSize) {
+            check(oldSize == size, "replaced " + oldSize + " rows of " + size);
+            size = m.displaySize();
+        }
+    }
+
+    static TodoApp.TaskManager deserialized(TodoApp.TaskManager m) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(m);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (TodoApp.TaskManager) in.readObject();
+        }
+    }
+
+    static void manager(Random rnd, TodoApp.TaskManager m) {
+        Rows rows = new Rows(m);
+        m.setDisplayListener(rows);
+        rows.size = m.displaySize();
+        // single writes first, more than BULK_ROW_EVENTS of them, each of which must report its row
+        for (int k = 0; k < 2 * TodoApp.TaskManager.BULK_ROW_EVENTS; k++) m.addTask(task(rnd, -100 - k));
+        sameDisplay(m, rows, "single adds");
+        int next = 0;
+        for (int op = 0; op < 3000; op++) {
+            List<TodoApp.Task> all = m.getTasks();
+            String what;
+            switch (all.isEmpty() ? 0 : rnd.nextInt(9)) {
+                case 0: {
+                    m.addTask(task(rnd, next++));
+                    what = "add";
+                    break;
+                }
+                case 1: {
+                    // below and above BULK_ROW_EVENTS, so both row events and displayReplaced happen
+                    List<TodoApp.Task> ts = new ArrayList<>();
+                    for (int k = rnd.nextInt(2 * TodoApp.TaskManager.BULK_ROW_EVENTS); k >= 0; k--) ts.add(task(rnd, next++));
+                    if (!all.isEmpty() && rnd.nextBoolean()) ts.add(changed(all.get(rnd.nextInt(all.size()))));
+                    m.addAll(ts);
+                    what = "addAll of " + ts.size();
+                    break;
+                }
+                case 2: {
+                    m.updateTask(changed(all.get(rnd.nextInt(all.size()))));
+                    what = "update";
+                    break;
+                }
+                case 3: {
+                    m.removeTask(all.get(rnd.nextInt(all.size())).getId());
+                    what = "remove";
+                    break;
+                }
+                case 4: {
+                    List<UUID> ids = someIds(rnd, all);
+                    m.completeAll(ids);
+                    what = "completeAll of " + ids.size();
+                    break;
+                }
+                case 5: {
+                    List<UUID> ids = someIds(rnd, all);
+                    m.updateAll(ids, t -> t.setCompleted(!t.isCompleted()));
+                    what = "updateAll of " + ids.size();
+                    break;
+                }
+                case 6: {
+                    List<UUID> ids = someIds(rnd, all);
+                    m.removeAll(ids);
+                    what = "removeAll of " + ids.size() + " ids";
+                    break;
+                }
+                case 7: {
+                    int mod = 2 + rnd.nextInt(20);
+                    m.removeAll(t -> t.getTitle().hashCode() % mod == 0);
+                    what = "removeAll matching";
+                    break;
+                }
+                default: {
+                    if (rnd.nextInt(20) == 0) {
+                        m.clearAllTasks();
+                        what = "clear";
+                    } else {
+                        m.addTask(task(rnd, next++));
+                        what = "add";
+                    }
+                    break;
+                }
+            }
+            sameDisplay(m, rows, "op " + op + " (" + what + ")");
+        }
+    }
+
+    static TodoApp.Task changed(TodoApp.Task t) {
+        TodoApp.Task c = t.copy();
+        if (c.getTitle().length() % 2 == 0) c.setCompleted(!c.isCompleted());
+        c.setTitle(c.getTitle() + "'");
+        return c;
+    }
+
+    // a few ids, or a large share of them, plus one unknown id
+    static List<UUID> someIds(Random rnd, List<TodoApp.Task> all) {
+        List<UUID> ids = new ArrayList<>();
+        int share = rnd.nextBoolean() ? 1 + rnd.nextInt(5) : all.size() / 2;
+        for (int k = 0; k < share; k++) ids.add(all.get(rnd.nextInt(all.size())).getId());
+        ids.add(UUID.randomUUID());
+        return ids;
+    }
+
+    static void sameDisplay(TodoApp.TaskManager m, Rows rows, String what) {
+        List<TodoApp.Task> expected = new ArrayList<>();
+        List<TodoApp.Task> all = m.getTasks(); // insertion order
+        for (TodoApp.Task t : all) if (!t.isCompleted()) expected.add(t);
+        for (TodoApp.Task t : all) if (t.isCompleted()) expected.add(t);
+        check(m.displaySize() == expected.size(), what + ": displaySize " + m.displaySize() + " != " + expected.size());
+        check(rows.size == expected.size(), what + ": listener counted " + rows.size + " rows of " + expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            if (m.displayAt(i) != expected.get(i)) throw new AssertionError(what + ": row " + i);
+        }
+    }
+
+    static void outOfRange(Runnable r, String what) {
+        try {
+            r.run();
+        } catch (IndexOutOfBoundsException expected) {
+            return;
+        }
+        throw new AssertionError(what + " should be out of range");
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Randomized checks of PersistentHashMap, PersistentVector and PersistentOrderedMap against
+ * LinkedHashMap and ArrayList: random updates, keys whose hashes collide fully or in part, and
+ * old versions, which must still read as they did after any number of later updates.
+ */
+public class PersistentCollectionsTest extends RandomizedTest {
+    /** A key with a chosen hash, so tests can force collisions. */
+    static final class Key {
+        final int id, hash;
+
+        Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object o) { return o instanceof Key && ((Key) o).id == id; }
+
+        @Override
+        public String toString() { return "Key(" + id + ", " + Integer.toHexString(hash) + ")"; }
+    }
+
+    public static void main(String[] args) {
+        long seed = seed(args);
+        hashMap(new Random(seed), 0xFFFFFFFF);
+        hashMap(new Random(seed), 0x7);         // 8 hashes: mostly full collisions
+        hashMap(new Random(seed), 0xF00F0000);  // equal low bits: deep tries before they differ
+        hashMapOf(new Random(seed));
+        vector(new Random(seed));
+        orderedMap(new Random(seed), 0xFFFFFFFF);
+        orderedMap(new Random(seed), 0x3);
+        orderedMapBuilder(new Random(seed));
+        System.out.println("PersistentCollectionsTest: ok (seed " + seed + ")");
+    }
+
+    static Key[] keys(Random rnd, int n, int hashMask) {
+        Key[] keys = new Key[n];
+        for (int i = 0; i < n; i++) keys[i] = new Key(i, rnd.nextInt() & hashMask);
+        return keys;
+    }
+
+    static void hashMap(Random rnd, int hashMask) {
+        Key[] keys = keys(rnd, 600, hashMask);
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+        Map<Key, Integer> ref = new HashMap<>();
+        List<PersistentHashMap<Key, Integer>> versions = new ArrayList<>();
+        List<Map<Key, Integer>> refs = new ArrayList<>();
+        for (int op = 0; op < 20_000; op++) {
+            Key k = keys[rnd.nextInt(keys.length)];
+            if (rnd.nextInt(3) > 0) {
+                int v = rnd.nextInt(1000);
+                map = map.plus(k, v);
+                ref.put(k, v);
+            } else {
+                map = map.minus(k);
+                ref.remove(k);
+            }
+            check(map.size() == ref.size(), "size after op " + op + " on " + k);
+            check(Objects.equals(map.get(k), ref.get(k)), "get " + k + " after op " + op);
+            if (op % 500 == 0) {
+                sameMap(map, ref, keys, "map at op " + op);
+                versions.add(map);
+                refs.add(new HashMap<>(ref));
+            }
+        }
+        for (int i = 0; i < versions.size(); i++) sameMap(versions.get(i), refs.get(i), keys, "old version " + i);
+        // removing everything empties it; removing an absent key changes nothing
+        for (Key k : keys) map = map.minus(k);
+        check(map.size() == 0, "size after removing all");
+        check(map.minus(keys[0]) == map, "minus of an absent key returns the same map");
+    }
+
+    static void hashMapOf(Random rnd) {
+        for (int n : new int[] { 0, 1, 31, 32, 33, 1000, 40_000 }) {
+            Key[] keys = keys(rnd, n, rnd.nextBoolean() ? 0xFFFFFFFF : 0xFF);
+            List<Integer> values = new ArrayList<>();
+            Map<Key, Integer> ref = new HashMap<>();
+            for (Key k : keys) {
+                values.add(k.id * 7);
+                ref.put(k, k.id * 7);
+            }
+            PersistentHashMap<Key, Integer> map = PersistentHashMap.of(Arrays.asList(keys), values);
+            sameMap(map, ref, keys, "of(" + n + ")");
+            // a built map takes updates like any other
+            if (n > 0) {
+                Key twin = new Key(-1, keys[0].hash); // same hash as the removed key
+                map = map.minus(keys[0]).plus(twin, 1);
+                check(map.get(keys[0]) == null && map.get(twin) == 1 && map.size() == n, "update after of(" + n + ")");
+            }
+        }
+    }
+
+    static void sameMap(PersistentHashMap<Key, Integer> map, Map<Key, Integer> ref, Key[] keys, String what) {
+        check(map.size() == ref.size(), what + ": size " + map.size() + " != " + ref.size());
+        for (Key k : keys) {
+            check(Objects.equals(map.get(k), ref.get(k)), what + ": get " + k);
+            check(map.containsKey(k) == ref.containsKey(k), what + ": containsKey " + k);
+        }
+    }
+
+    static void vector(Random rnd) {
+        PersistentVector<Integer> vec = PersistentVector.empty();
+        List<Integer> ref = new ArrayList<>();
+        List<PersistentVector<Integer>> versions = new ArrayList<>();
+        List<List<Integer>> refs = new ArrayList<>();
+        // past 32, 1024 and 32768 elements, where the tree gains a level
+        for (int op = 0; op < 80_000; op++) {
+            if (ref.isEmpty() || rnd.nextInt(4) > 0) {
+                vec = vec.append(op);
+                ref.add(op);
+            } else {
+                int i = rnd.nextInt(ref.size());
+                vec = vec.set(i, -op);
+                ref.set(i, -op);
+            }
+            int n = ref.size();
+            check(vec.size() == n, "vector size at op " + op);
+            check(vec.get(n - 1).equals(ref.get(n - 1)), "vector last element at op " + op);
+            if (op % 4000 == 0 || n == 33 || n == 1025 || n == 32_769) {
+                sameList(vec, ref, "vector at op " + op);
+                versions.add(vec);
+                refs.add(new ArrayList<>(ref));
+            }
+        }
+        for (int i = 0; i < versions.size(); i++) sameList(versions.get(i), refs.get(i), "old vector " + i);
+        for (int n : new int[] { 0, 1, 32, 33, 1024, 1025, 40_000 }) {
+            List<Integer> list = new ArrayList<>();
+            for (int i = 0; i < n; i++) list.add(rnd.nextInt());
+            PersistentVector<Integer> built = PersistentVector.of(list);
+            sameList(built, list, "of(" + n + ")");
+            built = built.append(5);
+            list.add(5);
+            sameList(built, list, "of(" + n + ") then append");
+        }
+        expectThrows(() -> PersistentVector.empty().get(0), IndexOutOfBoundsException.class, "get on empty");
+        expectThrows(() -> PersistentVector.of(List.of(1)).set(1, 2), IndexOutOfBoundsException.class, "set past the end");
+    }
+
+    static void sameList(PersistentVector<Integer> vec, List<Integer> ref, String what) {
+        check(vec.size() == ref.size(), what + ": size " + vec.size() + " != " + ref.size());
+        for (int i = 0; i < ref.size(); i++) check(vec.get(i).equals(ref.get(i)), what + ": element " + i);
+    }
+
+    static void orderedMap(Random rnd, int hashMask) {
+        Key[] keys = keys(rnd, 500, hashMask);
+        PersistentOrderedMap<Key, Integer> map = PersistentOrderedMap.empty();
+        LinkedHashMap<Key, Integer> ref = new LinkedHashMap<>();
+        List<PersistentOrderedMap<Key, Integer>> versions = new ArrayList<>();
+        List<List<Integer>> refs = new ArrayList<>();
+        for (int op = 0; op < 20_000; op++) {
+            Key k = keys[rnd.nextInt(keys.length)];
+            // phases of mostly removals, so the entry vector gets compacted now and then
+            boolean removing = (op / 2000) % 3 == 2;
+            if (rnd.nextInt(4) < (removing ? 1 : 3)) {
+                map = map.plus(k, op);
+                ref.put(k, op);
+            } else {
+                map = map.minus(k);
+                ref.remove(k);
+            }
+            check(map.size() == ref.size() && map.isEmpty() == ref.isEmpty(), "ordered size at op " + op);
+            check(Objects.equals(map.get(k), ref.get(k)), "ordered get " + k + " at op " + op);
+            if (op % 400 == 0) {
+                sameOrder(map, ref, keys, "ordered map at op " + op);
+                versions.add(map);
+                refs.add(new ArrayList<>(ref.values()));
+            }
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            check(toList(versions.get(i)).equals(refs.get(i)), "old ordered version " + i);
+        }
+    }
+
+    static void orderedMapBuilder(Random rnd) {
+        Key[] keys = keys(rnd, 3000, 0xFFF);
+        PersistentOrderedMap.Builder<Key, Integer> b = new PersistentOrderedMap.Builder<>();
+        LinkedHashMap<Key, Integer> ref = new LinkedHashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            Key k = keys[rnd.nextInt(keys.length)];
+            b.put(k, i);
+            ref.put(k, i);
+        }
+        PersistentOrderedMap<Key, Integer> map = b.build();
+        sameOrder(map, ref, keys, "built map");
+        for (int i = 0; i < 2000; i++) {
+            Key k = keys[rnd.nextInt(keys.length)];
+            map = map.minus(k);
+            ref.remove(k);
+        }
+        sameOrder(map, ref, keys, "built map after removals");
+    }
+
+    static void sameOrder(PersistentOrderedMap<Key, Integer> map, LinkedHashMap<Key, Integer> ref, Key[] keys, String what) {
+        List<Integer> expected = new ArrayList<>(ref.values());
+        check(map.size() == ref.size(), what + ": size");
+        check(toList(map).equals(expected), what + ": iteration order");
+        List<Integer> viaForEach = new ArrayList<>();
+        map.forEach(viaForEach::add);
+        check(viaForEach.equals(expected), what + ": forEach order");
+        check(map.spliterator().estimateSize() == ref.size(), what + ": spliterator size");
+        // splitting must neither lose nor duplicate values, and keeps the order
+        check(StreamSupport.stream(map.spliterator(), false).collect(Collectors.toList()).equals(expected), what + ": stream");
+        check(StreamSupport.stream(map.spliterator(), true).collect(Collectors.toList()).equals(expected), what + ": parallel stream");
+        for (Key k : keys) {
+            check(Objects.equals(map.get(k), ref.get(k)), what + ": get " + k);
+            check(map.containsKey(k) == ref.containsKey(k), what + ": containsKey " + k);
+        }
+    }
+
+    static List<Integer> toList(PersistentOrderedMap<Key, Integer> map) {
+        List<Integer> out = new ArrayList<>();
+        for (Integer v : map) out.add(v);
+        return out;
+    }
+
+    static void expectThrows(Runnable r, Class<? extends Throwable> type, String what) {
+        try {
+            r.run();
+        } catch (Throwable t) {
+            check(type.isInstance(t), what + ": threw " + t);
+            return;
+        }
+        throw new AssertionError(what + ": expected " + type.getSimpleName());
+    }
+}
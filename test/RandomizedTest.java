@@ -0,0 +1,17 @@
+/**
+ * Base of the randomized tests in test/. Each is a plain main() (there is no JUnit on the
+ * classpath) that {@code ant check} runs, and that can be run by hand with a seed argument to
+ * repeat a failing run. A test throws AssertionError on the first mismatch.
+ */
+abstract class RandomizedTest {
+    static final long DEFAULT_SEED = 20240611L;
+
+    /** The seed given as the first argument, else {@link #DEFAULT_SEED}. */
+    static long seed(String[] args) {
+        return args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_SEED;
+    }
+
+    static void check(boolean ok, String what) {
+        if (!ok) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Randomized checks of RingBuffer: single-threaded against an ArrayDeque bounded to the same
+ * capacity, then several producers racing one consumer, where every element must arrive exactly
+ * once and each producer's elements in the order it offered them.
+ */
+public class RingBufferTest extends RandomizedTest {
+    public static void main(String[] args) throws InterruptedException {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        capacities();
+        for (int capacity : new int[] { 1, 2, 3, 7, 64, 1000 }) againstQueue(rnd, capacity);
+        for (int round = 0; round < 20; round++) producers(rnd, 2 + rnd.nextInt(7), 1 << rnd.nextInt(9), round);
+        System.out.println("RingBufferTest: ok (seed " + seed + ")");
+    }
+
+    static void capacities() {
+        int[][] cases = { { 1, 2 }, { 2, 2 }, { 3, 4 }, { 5, 8 }, { 64, 64 }, { 65, 128 } };
+        for (int[] c : cases) check(new RingBuffer<Integer>(c[0]).capacity() == c[1], "capacity of " + c[0]);
+        for (int bad : new int[] { 0, -1, (1 << 30) + 1 }) {
+            try {
+                new RingBuffer<Integer>(bad);
+                throw new AssertionError("capacity " + bad + " should be rejected");
+            } catch (IllegalArgumentException expected) { }
+        }
+    }
+
+    static void againstQueue(Random rnd, int capacity) {
+        RingBuffer<Integer> ring = new RingBuffer<>(capacity);
+        int cap = ring.capacity();
+        ArrayDeque<Integer> ref = new ArrayDeque<>();
+        int next = 0;
+        for (int op = 0; op < 50_000; op++) {
+            String what = "capacity " + cap + ", op " + op;
+            if (rnd.nextInt(3) > 0) {
+                // bursts of offers, so the buffer fills up and wraps around regularly
+                for (int k = rnd.nextInt(cap + 2); k >= 0; k--) {
+                    boolean room = ref.size() < cap;
+                    check(ring.offer(next) == room, what + ": offer with " + ref.size() + " queued");
+                    if (room) ref.add(next);
+                    next++;
+                }
+            } else {
+                int max = rnd.nextInt(cap + 2);
+                List<Integer> got = new ArrayList<>();
+                int n = ring.drain(got::add, max);
+                List<Integer> expected = new ArrayList<>();
+                while (expected.size() < max && !ref.isEmpty()) expected.add(ref.poll());
+                check(n == got.size() && got.equals(expected), what + ": drain(" + max + ") gave " + got + ", expected " + expected);
+            }
+            check(ring.isEmpty() == ref.isEmpty(), what + ": isEmpty");
+        }
+    }
+
+    // producers offer (id, seq) pairs, yielding while full; the consumer drains until all arrived
+    static void producers(Random rnd, int threads, int capacity, int round) throws InterruptedException {
+        RingBuffer<long[]> ring = new RingBuffer<>(capacity);
+        int perThread = 5_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long id = t;
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long seq = 0; seq < perThread; seq++) {
+                    long[] item = { id, seq };
+                    while (!ring.offer(item)) Thread.yield();
+                }
+            });
+            th.setDaemon(true);
+            th.start();
+            producers.add(th);
+        }
+        long[] nextSeq = new long[threads];
+        int[] received = { 0 };
+        int total = threads * perThread;
+        start.countDown();
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        while (received[0] < total) {
+            int n = ring.drain(item -> {
+                int id = (int) item[0];
+                if (item[1] != nextSeq[id]) {
+                    throw new AssertionError("round " + round + ": producer " + id + " sent " + nextSeq[id] + " but got " + item[1]);
+                }
+                nextSeq[id]++;
+                received[0]++;
+            }, 1 + rnd.nextInt(2 * capacity));
+            if (n == 0) {
+                check(System.nanoTime() < deadline, "round " + round + ": stuck at " + received[0] + " of " + total);
+                Thread.yield();
+            }
+        }
+        for (Thread th : producers) th.join();
+        check(ring.isEmpty(), "round " + round + ": empty at the end");
+        for (int id = 0; id < threads; id++) check(nextSeq[id] == perThread, "round " + round + ": producer " + id + " count");
+    }
+}
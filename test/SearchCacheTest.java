@@ -0,0 +1,313 @@
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Randomized checks of search result caching. SearchCache on its own: a lookup answers only
+ * with a result stored for that query (or, for refine, a prefix of it) at the same generation.
+ * Then both TaskManagers, searched as someone types (extending, trimming and repeating queries,
+ * so results come from the cache, from refining a cached prefix, and from the indexes) with
+ * every kind of write in between: each search must match a brute-force filter of getTasks().
+ * Last, the app manager's first search on a large list, which builds its indexes: the list must
+ * stay readable and writable meanwhile, and the writes must be in the indexes it publishes.
+ */
+public class SearchCacheTest extends RandomizedTest {
+    static final String[] WORDS = { "invoice", "inventory", "invite", "call", "Bob", "bobcat", "report", "e-mail", "x" };
+
+    public static void main(String[] args) throws Exception {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        cache(rnd);
+        manager(rnd);
+        appManager(rnd);
+        firstSearch(rnd);
+        System.out.println("SearchCacheTest: ok (seed " + seed + ")");
+    }
+
+    static void cache(Random rnd) {
+        SearchCache<Integer> cache = new SearchCache<>(1 + rnd.nextInt(4), 20);
+        Map<String, Map<Long, List<Integer>>> stored = new HashMap<>(); // query -> generation -> last result put
+        long gen = 0;
+        String[] queries = { "i", "in", "inv", "invo", "invoice", "b", "bo", "bob", "x" };
+        for (int op = 0; op < 50_000; op++) {
+            String q = queries[rnd.nextInt(queries.length)];
+            int r = rnd.nextInt(10);
+            if (r == 0) {
+                gen++;
+            } else if (r < 5) {
+                // now and then a put computed before the latest write, which must not be served
+                long at = rnd.nextInt(4) == 0 ? Math.max(0, gen - 1 - rnd.nextInt(2)) : gen;
+                List<Integer> result = new ArrayList<>();
+                for (int k = rnd.nextInt(8); k > 0; k--) result.add(rnd.nextInt(100));
+                cache.put(q, at, result);
+                stored.computeIfAbsent(q, x -> new HashMap<>()).put(at, result);
+            } else if (r < 8) {
+                List<Integer> hit = cache.get(q, gen);
+                if (hit != null) check(hit.equals(storedAt(stored, q, gen)), "get(" + q + ") at generation " + gen + " gave " + hit);
+            } else {
+                List<Integer> hit = cache.refine(q, gen);
+                if (hit == null) continue;
+                boolean fromPrefix = false;
+                for (int n = 1; n < q.length(); n++) fromPrefix |= hit.equals(storedAt(stored, q.substring(0, n), gen));
+                check(fromPrefix, "refine(" + q + ") at generation " + gen + " gave " + hit);
+            }
+        }
+    }
+
+    static List<Integer> storedAt(Map<String, Map<Long, List<Integer>>> stored, String q, long gen) {
+        return stored.getOrDefault(q, Collections.emptyMap()).get(gen);
+    }
+
+    static String words(Random rnd) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = rnd.nextInt(3); k >= 0; k--) sb.append(sb.length() > 0 ? " " : "").append(WORDS[rnd.nextInt(WORDS.length)]);
+        return sb.toString();
+    }
+
+    /** The query box as it is typed into: extended a letter at a time, trimmed, or started over. */
+    static final class Typing {
+        String target = "", typed = "";
+
+        String next(Random rnd) {
+            int r = rnd.nextInt(10);
+            if (r == 0 || typed.equals(target) && r < 6) {
+                target = WORDS[rnd.nextInt(WORDS.length)];
+                if (rnd.nextBoolean()) target = target.toUpperCase();
+                typed = rnd.nextBoolean() ? "" : target.substring(0, 1);
+            } else if (r < 7 && typed.length() < target.length()) {
+                typed = target.substring(0, typed.length() + 1);
+            } else if (r < 8 && !typed.isEmpty()) {
+                typed = typed.substring(0, typed.length() - 1);
+            } // else the same query again
+            return typed;
+        }
+    }
+
+    static <T> void checkSearch(List<T> got, List<T> all, Function<T, String[]> fields, String q, String what) {
+        String lower = q.toLowerCase();
+        List<T> want = new ArrayList<>();
+        for (T t : all) {
+            for (String f : fields.apply(t)) {
+                if (f != null && f.toLowerCase().contains(lower)) {
+                    want.add(t);
+                    break;
+                }
+            }
+        }
+        check(got.equals(want), what + ": search(\"" + q + "\") gave " + got.size() + " tasks, expected " + want.size());
+    }
+
+    static Task task(Random rnd) {
+        return new Task(words(rnd), rnd.nextBoolean() ? words(rnd) : null, new Category(WORDS[rnd.nextInt(3)]),
+                        Priority.values()[rnd.nextInt(3)], null);
+    }
+
+    static void manager(Random rnd) {
+        TaskManager m = new TaskManager();
+        Typing typing = new Typing();
+        Function<Task, String[]> fields = t -> new String[] {
+            t.getTitle(), t.getDescription(), t.getCategory() != null ? t.getCategory().getName() : null };
+        for (int op = 0; op < 4000; op++) {
+            List<Task> all = m.getTasks();
+            String what;
+            Task t = all.isEmpty() ? null : all.get(rnd.nextInt(all.size()));
+            switch (t == null ? 0 : rnd.nextInt(12)) {
+                case 0: m.addTask(task(rnd)); what = "addTask"; break;
+                case 1: {
+                    t.setTitle(words(rnd));
+                    t.setDescription(rnd.nextBoolean() ? words(rnd) : null);
+                    m.updateTask(t);
+                    what = "updateTask";
+                    break;
+                }
+                case 2: m.removeTask(t.getId()); what = "removeTask"; break;
+                case 3: m.toggleCompleted(t.getId()); what = "toggleCompleted"; break;
+                case 4: m.setPriority(t.getId(), Priority.values()[rnd.nextInt(3)]); what = "setPriority"; break;
+                case 5: m.renameCategory(WORDS[rnd.nextInt(3)], WORDS[rnd.nextInt(3)]); what = "renameCategory"; break;
+                case 6: {
+                    List<Task> ts = new ArrayList<>();
+                    for (int k = rnd.nextInt(10); k >= 0; k--) ts.add(task(rnd));
+                    m.addAll(ts);
+                    what = "addAll";
+                    break;
+                }
+                case 7: {
+                    String title = words(rnd);
+                    m.updateAll(someIds(rnd, all), u -> u.setTitle(title));
+                    what = "updateAll";
+                    break;
+                }
+                case 8: m.completeAll(someIds(rnd, all)); what = "completeAll"; break;
+                case 9: {
+                    String word = WORDS[rnd.nextInt(WORDS.length)];
+                    m.removeAll(u -> u.getTitle().contains(word) && rnd.nextInt(3) == 0);
+                    what = "removeAll";
+                    break;
+                }
+                case 10: if (rnd.nextInt(20) == 0) m.clearAllTasks(); what = "clearAllTasks (maybe)"; break;
+                default: what = "no write";
+            }
+            all = m.getTasks();
+            for (int k = rnd.nextInt(4); k >= 0; k--) {
+                String q = typing.next(rnd);
+                checkSearch(m.search(q), all, fields, q, "TaskManager after " + what + " at op " + op);
+            }
+        }
+    }
+
+    static List<UUID> someIds(Random rnd, List<? extends Object> all) {
+        List<UUID> ids = new ArrayList<>();
+        for (int k = rnd.nextInt(Math.min(all.size(), 8) + 1); k > 0; k--) {
+            Object o = all.get(rnd.nextInt(all.size()));
+            ids.add(o instanceof Task ? ((Task) o).getId() : ((TodoApp.Task) o).getId());
+        }
+        return ids;
+    }
+
+    static TodoApp.Task appTask(Random rnd) {
+        return new TodoApp.Task(words(rnd), rnd.nextBoolean() ? words(rnd) : null,
+                                rnd.nextBoolean() ? new TodoApp.Category(WORDS[rnd.nextInt(3)]) : null,
+                                TodoApp.Priority.values()[rnd.nextInt(3)], null);
+    }
+
+    static void appManager(Random rnd) {
+        TodoApp.TaskManager m = new TodoApp.TaskManager();
+        Typing typing = new Typing();
+        Function<TodoApp.Task, String[]> fields = t -> new String[] {
+            t.getTitle(), t.getDescription(), t.getCategory() != null ? t.getCategory().getName() : null };
+        for (int op = 0; op < 4000; op++) {
+            List<TodoApp.Task> all = m.getTasks();
+            String what;
+            TodoApp.Task t = all.isEmpty() ? null : all.get(rnd.nextInt(all.size()));
+            switch (t == null ? 0 : rnd.nextInt(10)) {
+                case 0: m.addTask(appTask(rnd)); what = "addTask"; break;
+                case 1: {
+                    TodoApp.Task u = t.copy();
+                    u.setTitle(words(rnd));
+                    u.setCategory(rnd.nextBoolean() ? new TodoApp.Category(WORDS[rnd.nextInt(WORDS.length)]) : null);
+                    if (rnd.nextBoolean()) m.updateTask(u);
+                    else m.putTask(u);
+                    what = "updateTask/putTask";
+                    break;
+                }
+                case 2: m.removeTask(t.getId()); what = "removeTask"; break;
+                case 3: {
+                    List<TodoApp.Task> ts = new ArrayList<>();
+                    for (int k = rnd.nextInt(10); k >= 0; k--) ts.add(appTask(rnd));
+                    m.addAll(ts);
+                    what = "addAll";
+                    break;
+                }
+                case 4: {
+                    String title = words(rnd);
+                    m.updateAll(someIds(rnd, all), u -> u.setTitle(title));
+                    what = "updateAll";
+                    break;
+                }
+                case 5: m.completeAll(someIds(rnd, all)); what = "completeAll"; break;
+                case 6: {
+                    String word = WORDS[rnd.nextInt(WORDS.length)];
+                    m.removeAll(u -> u.getTitle().contains(word) && rnd.nextInt(3) == 0);
+                    what = "removeAll(filter)";
+                    break;
+                }
+                case 7: m.removeAll(someIds(rnd, all)); what = "removeAll(ids)"; break;
+                case 8: if (rnd.nextInt(20) == 0) m.clearAllTasks(); what = "clearAllTasks (maybe)"; break;
+                default: what = "no write";
+            }
+            all = m.getTasks();
+            for (int k = rnd.nextInt(4); k >= 0; k--) {
+                String q = typing.next(rnd);
+                checkSearch(m.search(q), all, fields, q, "TodoApp.TaskManager after " + what + " at op " + op);
+            }
+        }
+    }
+
+    /** A task whose title holds up the thread in {@link #held} until released, to pause an index build. */
+    static final class Gate extends TodoApp.Task {
+        final CountDownLatch entered = new CountDownLatch(1), release = new CountDownLatch(1);
+        volatile Thread held;
+
+        Gate() { super("gate", null, null, TodoApp.Priority.MEDIUM, null); }
+
+        @Override
+        public String getTitle() {
+            if (Thread.currentThread() == held) {
+                held = null;
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getTitle();
+        }
+    }
+
+    // the app manager's first search builds the indexes outside the lock: while it is paused
+    // midway, reads and writes go ahead, and the writes are in the indexes it then publishes
+    static void firstSearch(Random rnd) throws Exception {
+        Function<TodoApp.Task, String[]> fields = t -> new String[] {
+            t.getTitle(), t.getDescription(), t.getCategory() != null ? t.getCategory().getName() : null };
+        for (int round = 0; round < 6; round++) {
+            TodoApp.TaskManager m = new TodoApp.TaskManager();
+            List<TodoApp.Task> ts = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) ts.add(appTask(rnd));
+            Gate gate = new Gate();
+            ts.add(rnd.nextInt(ts.size() / 2), gate); // early enough for the build to see an interrupt after it
+            m.addAll(ts);
+            m.displaySize(); // the display order is built on first use, under the lock
+
+            boolean cancel = round % 2 == 0;
+            List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+            Thread search = new Thread(() -> {
+                try {
+                    m.search("invo");
+                    check(!cancel, "an interrupted first search finished");
+                } catch (CancellationException ex) {
+                    check(cancel, "first search cancelled");
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            });
+            search.setDaemon(true); // so a failed check can't leave them hanging
+            gate.held = search;
+            search.start();
+            check(gate.entered.await(10, TimeUnit.SECONDS), "round " + round + ": the index build never started");
+
+            // the build is paused: time reads and writes, as the EDT would make them
+            Thread edt = new Thread(() -> {
+                try {
+                    for (int k = 0; k < 200; k++) {
+                        if (m.displaySize() > 0) m.displayAt(0);
+                        TodoApp.Task t = ts.get(rnd.nextInt(ts.size())).copy();
+                        switch (rnd.nextInt(k == 100 && rnd.nextInt(3) == 0 ? 1 : 4)) {
+                            case 0: if (k == 100) { m.clearAllTasks(); } else { m.addTask(appTask(rnd)); } break;
+                            case 1: t.setTitle(words(rnd)); m.updateTask(t); break;
+                            case 2: m.removeTask(t.getId()); break;
+                            default: m.addTask(t); // removed earlier, perhaps: added back at the end
+                        }
+                    }
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            });
+            edt.setDaemon(true);
+            long start = System.nanoTime();
+            edt.start();
+            edt.join(10_000);
+            long took = System.nanoTime() - start;
+            check(!edt.isAlive(), "round " + round + ": reads and writes blocked by the first search's index build");
+            if (cancel) search.interrupt();
+            gate.release.countDown();
+            search.join();
+            if (!errors.isEmpty()) throw new AssertionError("round " + round, errors.get(0));
+            check(took < 5_000_000_000L, "round " + round + ": reads and writes took " + took / 1_000_000 + " ms during the build");
+            List<TodoApp.Task> all = m.getTasks();
+            for (String q : WORDS) checkSearch(m.search(q), all, fields, q, "round " + round + " after the first search");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.*;
+
+/**
+ * Randomized checks of TextIndex and TrigramIndex against a brute-force {@code contains} over
+ * the lower-cased fields: under adds, re-indexing and removes, candidates must hold every key
+ * whose text contains the query, once each and in first-indexed order. Texts and queries mix words
+ * whose case mapping changes their length (dotted capital I, sharp s, the fi ligature),
+ * combining marks, surrogate pairs and separators, and queries run from empty and one
+ * character up to whole fields; TrigramIndex must narrow every query of three or more.
+ */
+public class SearchIndexTest extends RandomizedTest {
+    static final String[] WORDS = {
+        "invoice", "Invoices", "INV", "e-mail", "x2", "2024", "\u0130stanbul", "istanbul", "stra\u00dfe", "STRASSE",
+        "\ufb01le", "FILE", "\u03a3\u03af\u03c3\u03c5\u03c6\u03bf\u03c2", "\u03a3\u038a\u03a3\u03a5\u03a6\u039f\u03a3", "na\u00efve", "nai\u0308ve", "caf\u00e9", "cafe\u0301", "a\ud83d\ude00b",
+        "\ud83d\ude00", "\u01c5emal", "\u01c4", "\ufb00", "x", "ab", "a.b", "o'clock", "\u4e2d\u6587", "\u0390",
+    };
+    static final String[] SEPARATORS = { " ", "  ", "-", ".", ", ", "", "/", "\n" };
+
+    public static void main(String[] args) {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        for (int round = 0; round < 10; round++) againstBruteForce(rnd, round);
+        System.out.println("SearchIndexTest: ok (seed " + seed + ")");
+    }
+
+    static String text(Random rnd) {
+        if (rnd.nextInt(8) == 0) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int k = rnd.nextInt(6); k >= 0; k--) {
+            if (sb.length() > 0) sb.append(SEPARATORS[rnd.nextInt(SEPARATORS.length)]);
+            sb.append(WORDS[rnd.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /** A query as someone might type it: a piece of some indexed text, a word, or noise, in any case. */
+    static String query(Random rnd, List<String[]> fields) {
+        String q;
+        int r = rnd.nextInt(10);
+        String[] f = fields.isEmpty() ? null : fields.get(rnd.nextInt(fields.size()));
+        String source = f == null ? null : f[rnd.nextInt(f.length)];
+        if (r < 5 && source != null) {
+            // a piece of a field, cut anywhere (even inside a surrogate pair)
+            int from = rnd.nextInt(source.length() + 1);
+            int to = from + rnd.nextInt(Math.min(source.length() - from, rnd.nextBoolean() ? 3 : 12) + 1);
+            q = source.substring(from, to);
+        } else if (r < 8) {
+            q = WORDS[rnd.nextInt(WORDS.length)];
+            if (rnd.nextBoolean()) q = SEPARATORS[rnd.nextInt(SEPARATORS.length)] + q;
+            if (rnd.nextBoolean()) q = q + SEPARATORS[rnd.nextInt(SEPARATORS.length)];
+        } else {
+            StringBuilder sb = new StringBuilder();
+            String chars = "aei\u0130\u0131\u00dfs\u03a3\u03c3\u03c2 .-x2\u0307\u0301";
+            for (int k = rnd.nextInt(5); k > 0; k--) sb.append(chars.charAt(rnd.nextInt(chars.length())));
+            q = sb.toString();
+        }
+        switch (rnd.nextInt(3)) {
+            case 0: return q.toUpperCase();
+            case 1: return q.toLowerCase();
+            default: return q;
+        }
+    }
+
+    static String[] lower(String[] fields) {
+        String[] out = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) out[i] = fields[i] != null ? fields[i].toLowerCase() : null;
+        return out;
+    }
+
+    static boolean contains(String[] lowerFields, String lowerQuery) {
+        for (String f : lowerFields) if (f != null && f.contains(lowerQuery)) return true;
+        return false;
+    }
+
+    static void againstBruteForce(Random rnd, int round) {
+        TextIndex<Integer> words = new TextIndex<>();
+        TrigramIndex<Integer> trigrams = new TrigramIndex<>();
+        Map<Integer, String[]> indexed = new LinkedHashMap<>(); // first-indexed order, as candidates keeps it
+        Map<Integer, String[]> lowered = new HashMap<>();
+        int next = 0;
+        for (int op = 0; op < 600; op++) {
+            List<Integer> keys = new ArrayList<>(indexed.keySet());
+            int r = keys.isEmpty() ? 0 : rnd.nextInt(10);
+            if (r < 5) {
+                String[] f = { text(rnd), text(rnd), text(rnd) };
+                words.put(next, f);
+                trigrams.put(next, f);
+                lowered.put(next, lower(f));
+                indexed.put(next++, f);
+            } else if (r < 8) {
+                Integer key = keys.get(rnd.nextInt(keys.size()));
+                String[] f = { text(rnd), text(rnd), text(rnd) };
+                words.put(key, f);
+                trigrams.put(key, f);
+                lowered.put(key, lower(f));
+                indexed.put(key, f);
+            } else {
+                Integer key = keys.get(rnd.nextInt(keys.size()));
+                words.remove(key);
+                trigrams.remove(key);
+                lowered.remove(key);
+                indexed.remove(key);
+            }
+            List<String[]> fields = new ArrayList<>(indexed.values());
+            for (int k = 0; k < 4; k++) {
+                String lower = query(rnd, fields).toLowerCase();
+                List<Integer> expected = new ArrayList<>();
+                for (Integer key : indexed.keySet()) if (contains(lowered.get(key), lower)) expected.add(key);
+                String what = "\"" + lower + "\" at op " + op + " of round " + round;
+                checkCandidates(words.candidates(lower), expected, indexed, "TextIndex " + what);
+                List<Integer> byTrigram = trigrams.candidates(lower);
+                check((byTrigram == null) == (lower.length() < 3), "TrigramIndex " + what + ": null result");
+                checkCandidates(byTrigram, expected, indexed, "TrigramIndex " + what);
+            }
+        }
+    }
+
+    // null means "scan everything"; otherwise a duplicate-free superset of expected, in indexed order
+    static void checkCandidates(List<Integer> candidates, List<Integer> expected, Map<Integer, String[]> indexed, String what) {
+        if (candidates == null) return;
+        Set<Integer> set = new HashSet<>(candidates);
+        check(set.containsAll(expected), what + ": misses " + missing(expected, candidates));
+        check(set.size() == candidates.size(), what + ": duplicates in " + candidates);
+        List<Integer> order = new ArrayList<>(indexed.keySet());
+        order.retainAll(set);
+        check(order.equals(candidates), what + ": out of order " + candidates);
+    }
+
+    static List<Integer> missing(List<Integer> expected, List<Integer> candidates) {
+        List<Integer> out = new ArrayList<>(expected);
+        out.removeAll(candidates);
+        return out;
+    }
+}
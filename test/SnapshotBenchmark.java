@@ -0,0 +1,37 @@
+import java.util.*;
+
+/**
+ * Times TodoApp.TaskManager.snapshot(), which shares the current persistent version, against
+ * copying every task as snapshots did before. Not part of {@code ant check}; run it by hand:
+ * {@code java -cp build/classes:build/test/classes SnapshotBenchmark [tasks]} (default 1M).
+ */
+public class SnapshotBenchmark {
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        List<TodoApp.Task> tasks = new ArrayList<>(n);
+        TodoApp.Category work = new TodoApp.Category("Work");
+        for (int i = 0; i < n; i++) {
+            tasks.add(new TodoApp.Task("task " + i, "details " + i, work, TodoApp.Priority.values()[i % 3], null));
+        }
+        TodoApp.TaskManager m = new TodoApp.TaskManager();
+        m.addAll(tasks);
+
+        long sink = 0;
+        for (int round = 0; round < 5; round++) {
+            long t0 = System.nanoTime();
+            int reps = 10_000;
+            for (int i = 0; i < reps; i++) sink += System.identityHashCode(m.snapshot());
+            long shared = (System.nanoTime() - t0) / reps;
+
+            t0 = System.nanoTime();
+            List<TodoApp.Task> copy = new ArrayList<>(n);
+            for (TodoApp.Task t : m) copy.add(t.copy());
+            long copied = System.nanoTime() - t0;
+            sink += copy.size();
+
+            System.out.printf("%d tasks: snapshot() %d ns, copying every task %d ms%n",
+                    n, shared, copied / 1_000_000);
+        }
+        if (sink == 42) System.out.println();
+    }
+}
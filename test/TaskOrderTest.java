@@ -0,0 +1,115 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Randomized checks that ordering by Task's packed sort key (KEY_ORDER, compareTo and
+ * TaskManager's sorted indexes) matches the field-by-field order it replaced: priority (high
+ * first), then due date (none last), then creation time. Dates and timestamps run from
+ * LocalDate.MIN/LocalDateTime.MIN to MAX, before 1970 and within one second, and keys must
+ * follow setPriority and setDueDate.
+ */
+public class TaskOrderTest extends RandomizedTest {
+    static final LocalDate[] DAYS = {
+        LocalDate.MIN, LocalDate.MIN.plusDays(1), LocalDate.of(-1_000_000, 6, 1), LocalDate.of(0, 1, 1),
+        LocalDate.of(1969, 12, 31), LocalDate.of(1970, 1, 1), LocalDate.of(2024, 6, 11), LocalDate.of(2106, 2, 7),
+        LocalDate.of(1_500_000, 1, 1), LocalDate.MAX.minusDays(1), LocalDate.MAX,
+    };
+    static final LocalDateTime[] TIMES = {
+        LocalDateTime.MIN, LocalDateTime.MIN.plusNanos(1), LocalDateTime.of(-5_000_000, 3, 1, 0, 0),
+        LocalDateTime.of(1900, 1, 1, 0, 0), LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_999),
+        LocalDateTime.of(1970, 1, 1, 0, 0), LocalDateTime.of(2024, 6, 11, 9, 30, 0, 1),
+        LocalDateTime.of(2024, 6, 11, 9, 30, 0, 2), LocalDateTime.of(2106, 2, 7, 6, 28, 16),
+        LocalDateTime.of(3_000_000, 1, 1, 0, 0), LocalDateTime.MAX.minusNanos(1), LocalDateTime.MAX,
+    };
+
+    /** Task.compareTo as it was before the packed key, spelled out over the fields. */
+    static final Comparator<Task> FIELD_ORDER = (a, b) -> {
+        int p = b.getPriority().ordinal() - a.getPriority().ordinal();
+        if (p != 0) return p;
+        if (a.getDueDate() != null && b.getDueDate() != null) {
+            int d = a.getDueDate().compareTo(b.getDueDate());
+            if (d != 0) return d;
+        } else if (a.getDueDate() != null) {
+            return -1;
+        } else if (b.getDueDate() != null) {
+            return 1;
+        }
+        return a.getCreatedAt().compareTo(b.getCreatedAt());
+    };
+
+    public static void main(String[] args) {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        pairs(rnd);
+        for (int round = 0; round < 20; round++) sorted(rnd, round);
+        System.out.println("TaskOrderTest: ok (seed " + seed + ")");
+    }
+
+    static LocalDate day(Random rnd) {
+        switch (rnd.nextInt(4)) {
+            case 0: return null;
+            case 1: return DAYS[rnd.nextInt(DAYS.length)];
+            case 2: return DAYS[1 + rnd.nextInt(DAYS.length - 2)].plusDays(rnd.nextInt(3) - 1);
+            default: return LocalDate.ofEpochDay(rnd.nextInt(200_000) - 100_000);
+        }
+    }
+
+    static LocalDateTime time(Random rnd) {
+        switch (rnd.nextInt(4)) {
+            case 0: return TIMES[rnd.nextInt(TIMES.length)];
+            case 1: {
+                // a nanosecond or a second either side of one of them, where packing would split
+                LocalDateTime t = TIMES[2 + rnd.nextInt(TIMES.length - 4)];
+                return rnd.nextBoolean() ? t.plusNanos(rnd.nextInt(3) - 1) : t.plusSeconds(rnd.nextInt(3) - 1);
+            }
+            case 2: return LocalDateTime.of(1969, 12, 31, 23, 59, 58).plusNanos(rnd.nextInt(4) * 500_000_000L);
+            default: return LocalDateTime.of(1970, 1, 1, 0, 0).plusSeconds(rnd.nextLong() % 10_000_000_000L).withNano(rnd.nextInt(3));
+        }
+    }
+
+    static Task task(Random rnd) {
+        return new Task(UUID.randomUUID(), "t", null, null, Priority.values()[rnd.nextInt(3)], day(rnd), time(rnd), false);
+    }
+
+    static void pairs(Random rnd) {
+        for (int k = 0; k < 200_000; k++) {
+            Task a = task(rnd), b = rnd.nextInt(10) == 0 ? a.copy() : task(rnd);
+            if (rnd.nextInt(4) == 0) a.setPriority(Priority.values()[rnd.nextInt(3)]);
+            if (rnd.nextInt(4) == 0) b.setDueDate(day(rnd));
+            int want = Integer.signum(FIELD_ORDER.compare(a, b));
+            check(Integer.signum(Task.KEY_ORDER.compare(a, b)) == want, "KEY_ORDER of " + a + " " + a.getCreatedAt()
+                  + " and " + b + " " + b.getCreatedAt() + " is not " + want);
+            check(Integer.signum(a.compareTo(b)) == want, "compareTo of " + a + " and " + b);
+        }
+    }
+
+    // sorted arrays and TaskManager's order against a stable sort by the fields
+    static void sorted(Random rnd, int round) {
+        List<Task> ts = new ArrayList<>();
+        for (int i = 1 + rnd.nextInt(2000); i > 0; i--) ts.add(task(rnd));
+        for (int i = rnd.nextInt(20); i > 0; i--) ts.add(ts.get(rnd.nextInt(ts.size())).copy()); // ties, same id
+        List<Task> want = new ArrayList<>(ts);
+        want.sort(FIELD_ORDER);
+        Task[] arr = ts.toArray(new Task[0]);
+        Arrays.parallelSort(arr, Task.KEY_ORDER);
+        for (int i = 0; i < arr.length; i++) check(FIELD_ORDER.compare(arr[i], want.get(i)) == 0, "round " + round + ": parallelSort at " + i);
+
+        TaskManager m = new TaskManager();
+        for (Task t : ts) m.addTask(t.copy()); // a copy with the same id replaces its original
+        for (int k = rnd.nextInt(50); k > 0; k--) {
+            List<Task> all = m.getTasks();
+            Task t = all.get(rnd.nextInt(all.size()));
+            if (rnd.nextBoolean()) {
+                m.setPriority(t.getId(), Priority.values()[rnd.nextInt(3)]);
+            } else {
+                t.setDueDate(day(rnd));
+                m.updateTask(t);
+            }
+        }
+        List<Task> got = m.getTasks();
+        List<Task> expected = new ArrayList<>(got);
+        expected.sort(FIELD_ORDER);
+        for (int i = 0; i < got.size(); i++) check(FIELD_ORDER.compare(got.get(i), expected.get(i)) == 0, "round " + round + ": TaskManager order at " + i);
+    }
+}
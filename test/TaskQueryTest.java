@@ -0,0 +1,196 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Randomized checks of TaskManager.query against filter-then-sort over getTasks(): random
+ * text, category, priority, completed and due filters, every order, and offsets and limits
+ * from 0 past the number of matches, over lists small and large enough for the planner to pick
+ * each of its plans. Writes between rounds, including category renames and merges, must keep
+ * the indexes the plans and filterByCategory read in step, and a cursor used after a write
+ * must fail rather than return stale results.
+ */
+public class TaskQueryTest extends RandomizedTest {
+    static final String[] WORDS = { "invoice", "call", "Bob", "report", "q3", "e-mail", "groceries", "dentist", "x" };
+    // names equal ignoring case, including a pair where equalsIgnoreCase and toLowerCase disagree
+    static final String[] CATEGORIES = { "Work", "work", "Home", "Errands", "General", "\u0130stanbul", "istanbul" };
+    static final LocalDate TODAY = LocalDate.of(2024, 6, 11);
+
+    public static void main(String[] args) {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        Set<String> plans = new TreeSet<>();
+        for (int size : new int[] { 0, 1, 5, 40, 300, 3000 }) againstFilterThenSort(rnd, size, plans);
+        for (String kind : new String[] { "scan all", "scan priority", "scan category", "scan by due date",
+                                          "text index", "bitmap", "all tasks" }) {
+            check(plans.stream().anyMatch(p -> p.startsWith(kind)), "no query was planned as \"" + kind + "\": " + plans);
+        }
+        System.out.println("TaskQueryTest: ok (seed " + seed + ")");
+    }
+
+    static String words(Random rnd, int max) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = rnd.nextInt(max); k >= 0; k--) sb.append(sb.length() > 0 ? " " : "").append(WORDS[rnd.nextInt(WORDS.length)]);
+        return sb.toString();
+    }
+
+    static LocalDate day(Random rnd) { return TODAY.plusDays(rnd.nextInt(61) - 30); }
+
+    static Task task(Random rnd) {
+        Task t = new Task(words(rnd, 3), rnd.nextBoolean() ? words(rnd, 6) : null,
+            rnd.nextInt(5) == 0 ? null : new Category(CATEGORIES[rnd.nextInt(CATEGORIES.length)]),
+            Priority.values()[rnd.nextInt(3)], rnd.nextInt(3) == 0 ? null : day(rnd));
+        t.setCompleted(rnd.nextInt(3) == 0);
+        return t;
+    }
+
+    static TaskQuery query(Random rnd, List<Task> all) {
+        TaskQuery.Builder b = TaskQuery.builder();
+        if (rnd.nextInt(3) == 0) {
+            String text = WORDS[rnd.nextInt(WORDS.length)];
+            if (rnd.nextBoolean() && !all.isEmpty()) {
+                // a piece of some title or category name, so short and odd substrings come up as well as words
+                Task t = all.get(rnd.nextInt(all.size()));
+                String field = rnd.nextInt(4) == 0 && t.getCategory() != null ? t.getCategory().getName() : t.getTitle();
+                int from = rnd.nextInt(field.length());
+                text = field.substring(from, from + 1 + rnd.nextInt(Math.min(6, field.length() - from)));
+            }
+            b.text(rnd.nextBoolean() ? text.toUpperCase() : text);
+        }
+        if (rnd.nextInt(3) == 0) {
+            for (int k = 1 + rnd.nextInt(2); k > 0; k--) b.categories(CATEGORIES[rnd.nextInt(CATEGORIES.length)]);
+            if (rnd.nextInt(5) == 0) b.categories("Nowhere");
+        }
+        if (rnd.nextInt(3) == 0) for (int k = 1 + rnd.nextInt(2); k > 0; k--) b.priorities(Priority.values()[rnd.nextInt(3)]);
+        if (rnd.nextInt(3) == 0) b.completed(rnd.nextBoolean());
+        if (rnd.nextInt(3) == 0) b.dueBetween(rnd.nextInt(4) == 0 ? null : day(rnd), rnd.nextInt(4) == 0 ? null : day(rnd));
+        b.orderBy(TaskQuery.Order.values()[rnd.nextInt(TaskQuery.Order.values().length)]);
+        if (rnd.nextBoolean()) b.offset(rnd.nextInt(rnd.nextBoolean() ? 5 : all.size() + 5));
+        switch (rnd.nextInt(4)) {
+            case 0: break;
+            case 1: b.limit(0); break;
+            case 2: b.limit(1 + rnd.nextInt(10)); break;
+            default: b.limit(rnd.nextInt(all.size() + 5));
+        }
+        return b.build();
+    }
+
+    // what the query means, spelled out over every task
+    static List<Task> expected(List<Task> all, TaskQuery q) {
+        String lower = q.getText() != null ? q.getText().toLowerCase() : null;
+        Predicate<Task> match = t -> {
+            if (lower != null && !t.getTitle().toLowerCase().contains(lower)
+                && (t.getDescription() == null || !t.getDescription().toLowerCase().contains(lower))
+                && (t.getCategory() == null || !t.getCategory().getName().toLowerCase().contains(lower))) return false;
+            if (!q.getCategories().isEmpty()) {
+                if (t.getCategory() == null) return false;
+                if (q.getCategories().stream().noneMatch(n -> n.equalsIgnoreCase(t.getCategory().getName()))) return false;
+            }
+            if (!q.getPriorities().isEmpty() && !q.getPriorities().contains(t.getPriority())) return false;
+            if (q.getCompleted() != null && t.isCompleted() != q.getCompleted()) return false;
+            if (q.hasDueFilter()) {
+                LocalDate d = t.getDueDate();
+                if (d == null) return false;
+                if (q.getDueFrom() != null && d.isBefore(q.getDueFrom())) return false;
+                if (q.getDueTo() != null && d.isAfter(q.getDueTo())) return false;
+            }
+            return true;
+        };
+        List<Task> out = new ArrayList<>();
+        for (Task t : all) if (match.test(t)) out.add(t);
+        // all is in DEFAULT order, which the stable sort keeps for ties
+        switch (q.getOrder()) {
+            case DUE_DATE: out.sort(Comparator.comparing(Task::getDueDate, Comparator.nullsLast(Comparator.naturalOrder()))); break;
+            case NEWEST: out.sort(Comparator.comparing(Task::getCreatedAt, Comparator.reverseOrder())); break;
+            case TITLE: out.sort(Comparator.comparing(Task::getTitle, String.CASE_INSENSITIVE_ORDER)); break;
+            default: break;
+        }
+        int from = Math.min(out.size(), q.getOffset());
+        return new ArrayList<>(out.subList(from, (int) Math.min(out.size(), (long) from + q.getLimit())));
+    }
+
+    static void againstFilterThenSort(Random rnd, int size, Set<String> plans) {
+        TaskManager m = new TaskManager();
+        // created in one go, so creation times are close together and NEWEST may have ties to break
+        List<Task> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) batch.add(task(rnd));
+        m.addAll(batch);
+        for (int round = 0; round < 40; round++) {
+            List<Task> all = m.getTasks();
+            for (int k = 0; k < 25; k++) {
+                TaskQuery q = query(rnd, all);
+                TaskCursor cursor = m.query(q);
+                plans.add(cursor.plan());
+                List<Task> got = new ArrayList<>();
+                // one at a time for a while, as a paging caller would, then the rest at once
+                for (int n = rnd.nextInt(5); n > 0 && cursor.hasNext(); n--) got.add(cursor.next());
+                got.addAll(cursor.toList());
+                check(!cursor.hasNext(), "cursor not drained");
+                List<Task> want = expected(all, q);
+                if (!got.equals(want)) {
+                    throw new AssertionError(all.size() + " tasks, plan \"" + cursor.plan() + "\", " + describe(q)
+                        + ": got " + got.size() + " tasks, expected " + want.size());
+                }
+            }
+            for (String name : CATEGORIES) {
+                List<Task> want = new ArrayList<>();
+                for (Task t : all) if (t.getCategory() != null && t.getCategory().getName().equalsIgnoreCase(name)) want.add(t);
+                check(m.filterByCategory(name).equals(want), "filterByCategory(" + name + ") of " + all.size() + " tasks");
+            }
+            check(m.filterByCategory(null).isEmpty(), "filterByCategory(null)");
+            Set<String> names = new HashSet<>();
+            for (Category c : m.getCategories()) check(names.add(c.getName()), "two categories named " + c.getName());
+            for (Task t : all) check(t.getCategory() == null || names.contains(t.getCategory().getName()), "unregistered category");
+            write(rnd, m, all);
+            // a cursor planned before a write must not be read after it
+            TaskCursor stale = m.query(TaskQuery.builder().build());
+            write(rnd, m, m.getTasks());
+            try {
+                stale.hasNext();
+                throw new AssertionError("cursor read after a write");
+            } catch (ConcurrentModificationException expected) { }
+        }
+    }
+
+    static void write(Random rnd, TaskManager m, List<Task> all) {
+        if (all.isEmpty()) {
+            m.addTask(task(rnd));
+            return;
+        }
+        Task t = all.get(rnd.nextInt(all.size()));
+        switch (rnd.nextInt(8)) {
+            case 0: m.addTask(task(rnd)); break;
+            case 1: m.removeTask(t.getId()); break;
+            case 2: m.toggleCompleted(t.getId()); break;
+            case 3: m.setPriority(t.getId(), Priority.values()[rnd.nextInt(3)]); break;
+            case 4: {
+                t.setDueDate(rnd.nextBoolean() ? null : day(rnd));
+                t.setTitle(words(rnd, 3));
+                m.updateTask(t);
+                break;
+            }
+            case 5: {
+                t.setCategory(rnd.nextBoolean() ? null : new Category(CATEGORIES[rnd.nextInt(CATEGORIES.length)]));
+                m.updateTask(t);
+                break;
+            }
+            case 6: {
+                // renamed in place, or merged into a category that has the name already
+                String to = rnd.nextInt(4) == 0 ? null : CATEGORIES[rnd.nextInt(CATEGORIES.length)];
+                m.renameCategory(CATEGORIES[rnd.nextInt(CATEGORIES.length)], rnd.nextInt(4) == 0 ? to + "'" : to);
+                break;
+            }
+            default: {
+                List<Task> ts = new ArrayList<>();
+                for (int k = rnd.nextInt(20); k >= 0; k--) ts.add(task(rnd));
+                m.addAll(ts);
+            }
+        }
+    }
+
+    static String describe(TaskQuery q) {
+        return "text " + q.getText() + ", categories " + q.getCategories() + ", priorities " + q.getPriorities()
+            + ", completed " + q.getCompleted() + (q.hasDueFilter() ? ", due " + q.getDueFrom() + ".." + q.getDueTo() : "")
+            + ", " + q.getOrder() + ", offset " + q.getOffset() + ", limit " + q.getLimit();
+    }
+}
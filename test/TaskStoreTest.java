@@ -0,0 +1,287 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Randomized checks of TaskStore against a map of the fields last written: appends, rewrites,
+ * flag-only changes and deletes (some repeated), with the store closed and reopened along the
+ * way. Text edits must not grow the strings heap past what compaction allows, and the files left
+ * by an interrupted compaction must be cleaned up or completed on open. Last, the app's tasks saved
+ * through TodoApp.PersistenceWorker, after a journal left at its old name is adopted, must load
+ * back from the store and journal in the order they were added, though many share a creation millisecond and slots are reused. A due date whose
+ * epoch day does not fit the record's int must be refused, leaving the record as it was.
+ */
+public class TaskStoreTest extends RandomizedTest {
+    public static void main(String[] args) throws Exception {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        File dir = Files.createTempDirectory("taskstore").toFile();
+        try {
+            repeatedEdits(new File(dir, "edits"), rnd);
+            againstMap(new File(dir, "random"), rnd);
+            interruptedCompaction(new File(dir, "crash"));
+            dueOutOfRange(new File(dir, "range"), rnd);
+            appOrder(dir, rnd);
+        } finally {
+            for (File f : dir.listFiles()) f.delete();
+            dir.delete();
+        }
+        System.out.println("TaskStoreTest: ok (seed " + seed + ")");
+    }
+
+    /** The fields of one record, compared with what the store decodes. */
+    static final class Fields {
+        final UUID id; final String title, description, category; final int priority;
+        final LocalDate due; final LocalDateTime created; final boolean completed;
+
+        Fields(UUID id, String title, String description, String category, int priority,
+               LocalDate due, LocalDateTime created, boolean completed) {
+            this.id = id; this.title = title; this.description = description; this.category = category;
+            this.priority = priority; this.due = due; this.created = created; this.completed = completed;
+        }
+
+        Fields completed(boolean c) { return new Fields(id, title, description, category, priority, due, created, c); }
+        Fields priority(int p) { return new Fields(id, title, description, category, p, due, created, completed); }
+
+        void write(TaskStore store, int slot) throws IOException {
+            store.write(slot, title, description, category, priority, due, created, completed);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Fields)) return false;
+            Fields f = (Fields) o;
+            return id.equals(f.id) && Objects.equals(title, f.title) && Objects.equals(description, f.description)
+                && Objects.equals(category, f.category) && priority == f.priority && Objects.equals(due, f.due)
+                && created.equals(f.created) && completed == f.completed;
+        }
+
+        @Override
+        public int hashCode() { return id.hashCode(); }
+
+        @Override
+        public String toString() { return id + " " + title + " / " + description + " / " + category; }
+    }
+
+    static Fields read(TaskStore store, int slot) { return store.read(slot, Fields::new); }
+
+    static Fields fields(Random rnd, UUID id) {
+        return new Fields(id, text(rnd, 40), rnd.nextBoolean() ? text(rnd, 400) : null,
+            rnd.nextInt(3) == 0 ? null : "cat " + rnd.nextInt(5), rnd.nextInt(3),
+            rnd.nextBoolean() ? due(rnd) : null,
+            LocalDateTime.of(2024, 6, 11, 9, 0).plusNanos(rnd.nextInt(1_000_000) * 1_000_000L), rnd.nextBoolean());
+    }
+
+    // now and then the first or last day whose epoch day still fits the record's int
+    static LocalDate due(Random rnd) {
+        if (rnd.nextInt(100) == 0) return LocalDate.ofEpochDay(rnd.nextBoolean() ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+        return LocalDate.of(2024, 1, 1).plusDays(rnd.nextInt(400));
+    }
+
+    static String text(Random rnd, int max) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = rnd.nextInt(max); i >= 0; i--) sb.append(rnd.nextInt(8) == 0 ? '\u00e9' : (char) ('a' + rnd.nextInt(26)));
+        return sb.toString();
+    }
+
+    static long heapFileSize(File base) { return new File(base.getPath() + ".strings").length(); }
+
+    // one task whose 2 KB description is edited over and over, each edit forced like a checkpoint
+    static void repeatedEdits(File base, Random rnd) throws IOException {
+        Fields f = fields(rnd, UUID.randomUUID());
+        int slot;
+        try (TaskStore store = TaskStore.open(base)) {
+            slot = store.allocate(f.id);
+            for (int edit = 0; edit < 2000; edit++) {
+                char[] desc = new char[2000];
+                Arrays.fill(desc, (char) ('a' + edit % 26));
+                f = new Fields(f.id, f.title, edit + new String(desc), f.category, f.priority, f.due, f.created, f.completed);
+                f.write(store, slot);
+                store.force();
+                check(store.garbage() <= TaskStore.COMPACT_MIN_GARBAGE + 2 * 2010, "garbage " + store.garbage() + " at edit " + edit);
+                check(heapFileSize(base) <= 4 * TaskStore.COMPACT_MIN_GARBAGE, "heap file " + heapFileSize(base) + " at edit " + edit);
+            }
+            check(read(store, slot).equals(f), "task after edits");
+        }
+        try (TaskStore store = TaskStore.open(base)) {
+            check(store.size() == 1 && read(store, slot).equals(f), "task after reopening");
+        }
+    }
+
+    static void dueOutOfRange(File base, Random rnd) throws IOException {
+        try (TaskStore store = TaskStore.open(base)) {
+            Fields f = fields(rnd, UUID.randomUUID());
+            int slot = store.allocate(f.id);
+            f.write(store, slot);
+            for (LocalDate day : new LocalDate[] { LocalDate.ofEpochDay(Integer.MAX_VALUE + 1L), LocalDate.MIN }) {
+                Fields beyond = new Fields(f.id, "changed", null, null, f.priority, day, f.created, f.completed);
+                try {
+                    beyond.write(store, slot);
+                    check(false, "stored due date " + day);
+                } catch (IOException expected) {
+                    check(read(store, slot).equals(f), "record after refusing " + day);
+                }
+            }
+        }
+    }
+
+    static void againstMap(File base, Random rnd) throws IOException {
+        Map<Integer, Fields> expected = new HashMap<>();
+        int live = 0; // heapBytes of the expected records
+        TaskStore store = TaskStore.open(base);
+        try {
+            for (int op = 0; op < 20_000; op++) {
+                List<Integer> slots = new ArrayList<>(expected.keySet());
+                int r = slots.isEmpty() ? 0 : rnd.nextInt(10);
+                if (r < 3) {
+                    Fields f = fields(rnd, UUID.randomUUID());
+                    int slot = store.allocate(f.id);
+                    check(!expected.containsKey(slot), "allocated live slot " + slot);
+                    f.write(store, slot);
+                    expected.put(slot, f);
+                    live += heapBytes(f);
+                } else if (r < 7) {
+                    int slot = slots.get(rnd.nextInt(slots.size()));
+                    Fields f = fields(rnd, expected.get(slot).id);
+                    if (rnd.nextBoolean()) f = new Fields(f.id, expected.get(slot).title, f.description, f.category,
+                                                          f.priority, f.due, f.created, f.completed);
+                    f.write(store, slot);
+                    live += heapBytes(f) - heapBytes(expected.put(slot, f));
+                } else if (r < 8) {
+                    int slot = slots.get(rnd.nextInt(slots.size()));
+                    Fields f = expected.get(slot);
+                    if (rnd.nextBoolean()) {
+                        store.setCompleted(slot, !f.completed);
+                        expected.put(slot, f.completed(!f.completed));
+                    } else {
+                        int p = rnd.nextInt(3);
+                        store.setPriority(slot, Priority.values()[p]);
+                        expected.put(slot, f.priority(p));
+                    }
+                } else {
+                    int slot = slots.get(rnd.nextInt(slots.size()));
+                    store.delete(slot);
+                    // a second delete must not put the slot on the free list twice
+                    if (rnd.nextBoolean()) store.delete(slot);
+                    live -= heapBytes(expected.remove(slot));
+                }
+                // a write compacts once garbage outgrows the live strings (deletes leave it to the next write)
+                if (r < 7) check(store.garbage() <= Math.max(TaskStore.COMPACT_MIN_GARBAGE, live),
+                                 "garbage " + store.garbage() + " at op " + op);
+                if (op % 1000 == 999) {
+                    store.close();
+                    store = TaskStore.open(base);
+                }
+                if (op % 500 == 0 || op == 19_999) {
+                    check(store.size() == expected.size(), "size at op " + op);
+                    for (int slot = 0; slot < store.slotCount(); slot++) {
+                        Fields f = expected.get(slot);
+                        check(store.isLive(slot) == (f != null), "live " + slot + " at op " + op);
+                        if (f == null) continue;
+                        check(read(store, slot).equals(f), "slot " + slot + " at op " + op);
+                        check(store.slotOf(f.id) == slot, "slotOf " + slot + " at op " + op);
+                    }
+                }
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    // heap bytes the strings of one record take
+    static int heapBytes(Fields f) {
+        if (f == null) return 0;
+        int n = 0;
+        for (String s : new String[] { f.title, f.description, f.category }) {
+            if (s != null) n += s.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return n;
+    }
+
+    // the files a compaction leaves when a crash interrupts it before or after it commits
+    static void interruptedCompaction(File base) throws IOException {
+        Fields f = fields(new Random(1), UUID.randomUUID());
+        try (TaskStore store = TaskStore.open(base)) {
+            f.write(store, store.allocate(f.id));
+        }
+        // before the commit: the new files are dropped and the old ones stay in use
+        Files.write(new File(base.getPath() + ".tasks.tmp").toPath(), new byte[100]);
+        Files.write(new File(base.getPath() + ".strings.new").toPath(), new byte[100]);
+        try (TaskStore store = TaskStore.open(base)) {
+            check(store.size() == 1 && read(store, 0).equals(f), "store after a crash before the commit");
+            // compact writes the new files and renames them; leave a committed pair behind instead
+            store.compact();
+        }
+        File tasks = new File(base.getPath() + ".tasks"), strings = new File(base.getPath() + ".strings");
+        Files.copy(tasks.toPath(), new File(base.getPath() + ".tasks.new").toPath());
+        Files.copy(strings.toPath(), new File(base.getPath() + ".strings.new").toPath());
+        Files.write(tasks.toPath(), new byte[100]);
+        Files.write(strings.toPath(), new byte[100]);
+        try (TaskStore store = TaskStore.open(base)) {
+            check(store.size() == 1 && read(store, 0).equals(f), "store after a crash after the commit");
+        }
+        for (String suffix : new String[] { ".tasks.tmp", ".tasks.new", ".strings.new" }) {
+            check(!new File(base.getPath() + suffix).exists(), suffix + " left behind");
+        }
+    }
+
+    static void appOrder(File dir, Random rnd) throws Exception {
+        File base = new File(dir, "app"), legacy = new File(dir, "app.ser");
+        TodoApp.TaskManager m = new TodoApp.TaskManager();
+        int next = 0;
+        // edits an earlier version journaled next to its snapshot, moved next to the store on startup
+        try (TodoApp.TaskJournal old = new TodoApp.TaskJournal(legacy)) {
+            for (int k = 0; k < 5; k++) old.put(new TodoApp.Task("task " + next++, null, null, TodoApp.Priority.MEDIUM, null));
+            old.flush();
+        }
+        TodoApp.TaskJournal journal = new TodoApp.TaskJournal(base);
+        journal.adoptLegacy(TodoApp.PersistenceWorker.legacyJournal(legacy));
+        check(journal.replay(m) == 5 && !TodoApp.PersistenceWorker.legacyJournal(legacy).exists(), "legacy journal adopted");
+        TodoApp.PersistenceWorker worker = new TodoApp.PersistenceWorker(base, legacy, journal, 0, ex -> {});
+        for (int round = 0; round < 120; round++) {
+            // a bulk add: created in one go, so most of them share a millisecond
+            List<TodoApp.Task> added = new ArrayList<>();
+            for (int k = 1 + rnd.nextInt(40); k > 0; k--) {
+                TodoApp.Task t = new TodoApp.Task("task " + next++, null, null, TodoApp.Priority.MEDIUM, null);
+                t.setCompleted(rnd.nextInt(4) == 0);
+                added.add(t);
+            }
+            m.addAll(added);
+            worker.putAll(added);
+            List<TodoApp.Task> all = m.getTasks();
+            for (int k = rnd.nextInt(all.size() / 3 + 1); k > 0; k--) {
+                UUID id = all.get(rnd.nextInt(all.size())).getId();
+                m.removeTask(id);
+                worker.remove(id);
+            }
+            all = m.getTasks();
+            for (int k = rnd.nextInt(5); k > 0; k--) {
+                TodoApp.Task t = all.get(rnd.nextInt(all.size())).copy();
+                t.setTitle(t.getTitle() + "'");
+                m.updateTask(t);
+                worker.put(t);
+            }
+            if (rnd.nextInt(3) == 0) worker.checkpoint(m.snapshot());
+            if (round % 10 == 9) {
+                check(worker.flush().get(), "flush in round " + round);
+                TodoApp.TaskManager loaded = new TodoApp.TaskManager();
+                if (TaskStore.exists(base)) {
+                    try (TaskStore store = TaskStore.open(base)) { loaded = TodoApp.TaskManager.loadFromStore(store, chunk -> {}); }
+                }
+                new TodoApp.TaskJournal(base).replay(loaded);
+                List<TodoApp.Task> want = m.getTasks(), got = loaded.getTasks();
+                check(got.size() == want.size(), "reloaded " + got.size() + " of " + want.size() + " in round " + round);
+                for (int i = 0; i < want.size(); i++) {
+                    TodoApp.Task w = want.get(i), g = got.get(i);
+                    check(g.getId().equals(w.getId()) && g.getTitle().equals(w.getTitle()) && g.isCompleted() == w.isCompleted(),
+                          "task " + i + " reloaded as " + g + " instead of " + w + " in round " + round);
+                }
+            }
+        }
+        worker.close(10_000);
+    }
+}
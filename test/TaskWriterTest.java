@@ -0,0 +1,244 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Randomized checks of TaskWriter: one producer against a TaskManager given the same writes
+ * directly, then several producers racing through a small buffer while a reader walks the
+ * tasks, where each producer's writes must apply in its order and a completed future must mean
+ * the write is visible. A command that throws fails only its own future. Closing must apply or
+ * reject every command submitted around it, never strand one.
+ */
+public class TaskWriterTest extends RandomizedTest {
+    static final String[] CATEGORIES = { "Work", "Home", "Errands" };
+
+    public static void main(String[] args) throws Exception {
+        long seed = seed(args);
+        Random rnd = new Random(seed);
+        againstManager(rnd);
+        for (int round = 0; round < 10; round++) producers(new Random(rnd.nextLong()), round);
+        for (int round = 0; round < 20; round++) closing(new Random(rnd.nextLong()), round);
+        System.out.println("TaskWriterTest: ok (seed " + seed + ")");
+    }
+
+    static Task task(Random rnd) {
+        return new Task("task " + rnd.nextInt(1000), null, new Category(CATEGORIES[rnd.nextInt(CATEGORIES.length)]),
+                        Priority.values()[rnd.nextInt(3)], null);
+    }
+
+    static String fields(Task t) {
+        return t.getId() + "|" + t.getTitle() + "|" + (t.getCategory() != null ? t.getCategory().getName() : null)
+            + "|" + t.getPriority() + "|" + t.isCompleted();
+    }
+
+    static List<String> fieldsOf(TaskManager m) {
+        List<String> out = new ArrayList<>();
+        for (Task t : m.getTasks()) out.add(fields(t));
+        return out;
+    }
+
+    // every kind of command from one thread, against the same calls made on a manager directly
+    static void againstManager(Random rnd) {
+        TaskManager m = new TaskManager(), ref = new TaskManager();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        try (TaskWriter w = new TaskWriter(m, 4, 3)) {
+            List<Task> live = new ArrayList<>();
+            for (int op = 0; op < 5000; op++) {
+                int r = live.isEmpty() ? 0 : rnd.nextInt(100);
+                if (r < 30) {
+                    // live holds ref's tasks: m's are changed on the writer thread
+                    Task t = task(rnd), c = t.copy();
+                    pending.add(w.add(t));
+                    ref.addTask(c);
+                    live.add(c);
+                } else if (r < 45) {
+                    Task t = live.get(rnd.nextInt(live.size())).copy();
+                    t.setTitle("edited " + op);
+                    t.setPriority(Priority.values()[rnd.nextInt(3)]);
+                    pending.add(w.update(t));
+                    ref.updateTask(t.copy());
+                } else if (r < 60) {
+                    UUID id = live.get(rnd.nextInt(live.size())).getId();
+                    pending.add(w.toggleCompleted(id));
+                    ref.toggleCompleted(id);
+                } else if (r < 75) {
+                    UUID id = live.get(rnd.nextInt(live.size())).getId();
+                    Priority p = Priority.values()[rnd.nextInt(3)];
+                    pending.add(w.setPriority(id, p));
+                    ref.setPriority(id, p);
+                } else if (r < 95) {
+                    UUID id = live.remove(rnd.nextInt(live.size())).getId();
+                    pending.add(w.remove(id));
+                    ref.removeTask(id);
+                } else if (r < 99) {
+                    String from = CATEGORIES[rnd.nextInt(CATEGORIES.length)], to = CATEGORIES[rnd.nextInt(CATEGORIES.length)];
+                    pending.add(w.renameCategory(from, to));
+                    ref.renameCategory(from, to);
+                } else {
+                    pending.add(w.clear());
+                    ref.clearAllTasks();
+                    live.clear();
+                }
+                if (op % 500 == 499) {
+                    pending.get(pending.size() - 1).join();
+                    check(fieldsOf(m).equals(fieldsOf(ref)), "tasks after op " + op);
+                }
+            }
+        }
+        for (CompletableFuture<Void> f : pending) check(f.isDone() && !f.isCompletedExceptionally(), "a command failed");
+        check(fieldsOf(m).equals(fieldsOf(ref)), "tasks after closing");
+    }
+
+    static void producers(Random rnd, int round) throws Exception {
+        TaskManager m = new TaskManager();
+        int threads = 2 + rnd.nextInt(5);
+        TaskWriter w = new TaskWriter(m, 1 << rnd.nextInt(5), 1 + rnd.nextInt(16));
+        List<Map<UUID, String>> expected = new ArrayList<>();
+        List<Thread> ts = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < threads; p++) {
+            Random own = new Random(rnd.nextLong());
+            Map<UUID, String> mine = new LinkedHashMap<>(); // this producer's tasks, by the fields they should end with
+            expected.add(mine);
+            ts.add(new Thread(() -> {
+                try {
+                    start.await();
+                    produce(own, w, m, mine);
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            }));
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    for (Task t : m.getTasks()) check(t.getTitle() != null, "task without a title");
+                    m.search("task 1");
+                    m.filterByPriority(Priority.HIGH);
+                }
+            } catch (Throwable ex) {
+                errors.add(ex);
+            }
+        });
+        reader.start();
+        for (Thread t : ts) t.start();
+        start.countDown();
+        for (Thread t : ts) t.join();
+        done.set(true);
+        reader.join();
+        w.close();
+        if (!errors.isEmpty()) throw new AssertionError("round " + round, errors.get(0));
+        Map<UUID, String> all = new HashMap<>();
+        for (Map<UUID, String> mine : expected) all.putAll(mine);
+        check(m.getTasks().size() == all.size(), "round " + round + ": " + m.getTasks().size() + " tasks instead of " + all.size());
+        for (Task t : m.getTasks()) check(fields(t).equals(all.get(t.getId())), "round " + round + ": " + fields(t));
+    }
+
+    // one producer's writes, to its own tasks only, so its model can predict the outcome
+    static void produce(Random rnd, TaskWriter w, TaskManager m, Map<UUID, String> mine) throws Exception {
+        List<Task> live = new ArrayList<>();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int op = 0; op < 2000; op++) {
+            int r = live.isEmpty() ? 0 : rnd.nextInt(100);
+            Task changed = null;
+            if (r < 35) {
+                // live holds copies: the manager changes its tasks on the writer thread
+                Task t = task(rnd);
+                changed = t.copy();
+                live.add(changed);
+                CompletableFuture<Void> f = w.add(t);
+                if (rnd.nextInt(20) == 0) {
+                    // completing means the batch is visible: a reader must find the task now
+                    f.join();
+                    check(m.findById(t.getId()) != null, "added task not visible once its future completed");
+                }
+                pending.add(f);
+            } else if (r < 55) {
+                int i = rnd.nextInt(live.size());
+                Task t = live.get(i).copy();
+                t.setTitle("edited " + op);
+                live.set(i, t);
+                changed = t.copy();
+                pending.add(w.update(t));
+            } else if (r < 70) {
+                int i = rnd.nextInt(live.size());
+                Task t = live.get(i).copy();
+                t.toggleCompleted();
+                live.set(i, t);
+                changed = t;
+                pending.add(w.toggleCompleted(t.getId()));
+            } else if (r < 85) {
+                int i = rnd.nextInt(live.size());
+                Task t = live.get(i).copy();
+                t.setPriority(Priority.values()[rnd.nextInt(3)]);
+                live.set(i, t);
+                changed = t;
+                pending.add(w.setPriority(t.getId(), t.getPriority()));
+            } else if (r < 98) {
+                Task t = live.remove(rnd.nextInt(live.size()));
+                mine.remove(t.getId());
+                pending.add(w.remove(t.getId()));
+            } else {
+                // a command that throws fails its own future and nothing else
+                CompletableFuture<Void> f = w.update(null);
+                try {
+                    f.get(10, TimeUnit.SECONDS);
+                    throw new AssertionError("update(null) succeeded");
+                } catch (ExecutionException expected) {
+                    check(expected.getCause() instanceof NullPointerException, "update(null) failed with " + expected.getCause());
+                }
+            }
+            if (changed != null) mine.put(changed.getId(), fields(changed));
+        }
+        for (CompletableFuture<Void> f : pending) f.get(10, TimeUnit.SECONDS);
+    }
+
+    // producers still submitting while the writer closes: each add is applied or rejected
+    static void closing(Random rnd, int round) throws Exception {
+        TaskManager m = new TaskManager();
+        TaskWriter w = new TaskWriter(m, 1 << rnd.nextInt(4), 1 + rnd.nextInt(8));
+        int threads = 1 + rnd.nextInt(4);
+        List<Map<Task, CompletableFuture<Void>>> submitted = new ArrayList<>();
+        List<Thread> ts = new ArrayList<>();
+        for (int p = 0; p < threads; p++) {
+            Map<Task, CompletableFuture<Void>> mine = new LinkedHashMap<>();
+            submitted.add(mine);
+            Random own = new Random(rnd.nextLong());
+            ts.add(new Thread(() -> {
+                for (int k = 0; k < 3000; k++) {
+                    Task t = task(own);
+                    CompletableFuture<Void> f = w.add(t);
+                    mine.put(t, f);
+                    if (f.isCompletedExceptionally()) break;
+                }
+            }));
+        }
+        for (Thread t : ts) t.start();
+        Thread.sleep(rnd.nextInt(3));
+        w.close();
+        for (Thread t : ts) t.join();
+        int applied = 0;
+        for (Map<Task, CompletableFuture<Void>> mine : submitted) {
+            for (Map.Entry<Task, CompletableFuture<Void>> e : mine.entrySet()) {
+                CompletableFuture<Void> f = e.getValue();
+                try {
+                    f.get(10, TimeUnit.SECONDS);
+                    check(m.findById(e.getKey().getId()) != null, "round " + round + ": applied add not in the manager");
+                    applied++;
+                } catch (ExecutionException ex) {
+                    check(ex.getCause() instanceof RejectedExecutionException, "round " + round + ": add failed with " + ex.getCause());
+                    check(m.findById(e.getKey().getId()) == null, "round " + round + ": rejected add in the manager");
+                }
+            }
+        }
+        check(m.getTasks().size() == applied, "round " + round + ": " + m.getTasks().size() + " tasks, " + applied + " applied");
+        try {
+            w.add(task(rnd)).get(10, TimeUnit.SECONDS);
+            throw new AssertionError("add after close succeeded");
+        } catch (ExecutionException expected) {
+            check(expected.getCause() instanceof RejectedExecutionException, "add after close failed with " + expected.getCause());
+        }
+    }
+}